@@ -15,6 +15,9 @@
  */
 package consulo.gradle.service.project;
 
+import consulo.externalSystem.model.DataNode;
+import consulo.externalSystem.model.project.LibraryData;
+import consulo.externalSystem.model.project.ModuleData;
 import consulo.externalSystem.model.task.ExternalSystemTaskId;
 import consulo.externalSystem.model.task.ExternalSystemTaskNotificationListener;
 import consulo.gradle.setting.GradleExecutionSettings;
@@ -22,6 +25,10 @@ import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import org.gradle.tooling.ProjectConnection;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * @author Vladislav.Soroka
  * @since 10/15/13
@@ -40,6 +47,12 @@ public class ProjectResolverContext {
   private final boolean myIsPreviewMode;
   @Nonnull
   private Object myModels;
+  @Nonnull
+  private final Map<String, DataNode<ModuleData>> myModulesByExternalName;
+  @Nonnull
+  private final Map<String, DataNode<LibraryData>> myLibrariesByExternalName;
+  @Nonnull
+  private final Map<LibraryData, LibraryData> myInternedLibraries;
 
   public ProjectResolverContext(@Nonnull final ExternalSystemTaskId externalSystemTaskId, @Nonnull final String projectPath,
                                 @Nullable final GradleExecutionSettings settings, @Nonnull final ProjectConnection connection,
@@ -50,6 +63,25 @@ public class ProjectResolverContext {
     myConnection = connection;
     myListener = listener;
     myIsPreviewMode = isPreviewMode;
+    myModulesByExternalName = new ConcurrentHashMap<>();
+    myLibrariesByExternalName = new ConcurrentHashMap<>();
+    myInternedLibraries = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Creates context of a build included into the build of the given context. Modules and libraries registered through either
+   * of the contexts are visible to both of them, so the builds can refer to each other's modules and share project libraries.
+   */
+  public ProjectResolverContext(@Nonnull ProjectResolverContext mainCtx, @Nonnull String projectPath) {
+    myExternalSystemTaskId = mainCtx.myExternalSystemTaskId;
+    myProjectPath = projectPath;
+    mySettings = mainCtx.mySettings;
+    myConnection = mainCtx.myConnection;
+    myListener = mainCtx.myListener;
+    myIsPreviewMode = mainCtx.myIsPreviewMode;
+    myModulesByExternalName = mainCtx.myModulesByExternalName;
+    myLibrariesByExternalName = mainCtx.myLibrariesByExternalName;
+    myInternedLibraries = mainCtx.myInternedLibraries;
   }
 
   @Nonnull
@@ -89,6 +121,48 @@ public class ProjectResolverContext {
   public void setModels(@Nonnull Object models) {
     myModels = models;
   }
+
+  /**
+   * Registers module node created during the current import, so resolver extensions can find it by its external name
+   * without scanning the project node children.
+   */
+  public void registerModule(@Nonnull DataNode<ModuleData> moduleNode) {
+    myModulesByExternalName.put(moduleNode.getData().getExternalName(), moduleNode);
+  }
+
+  @Nullable
+  public DataNode<ModuleData> findModule(@Nonnull String externalName) {
+    return myModulesByExternalName.get(externalName);
+  }
+
+  @Nonnull
+  public Collection<String> getRegisteredModuleNames() {
+    return myModulesByExternalName.keySet();
+  }
+
+  /**
+   * Registers project library node created during the current import, see {@link #findLibrary(String)}.
+   */
+  public void registerLibrary(@Nonnull DataNode<LibraryData> libraryNode) {
+    LibraryData library = libraryNode.getData();
+    myLibrariesByExternalName.put(library.getExternalName(), libraryNode);
+    myInternedLibraries.putIfAbsent(library, library);
+  }
+
+  @Nullable
+  public DataNode<LibraryData> findLibrary(@Nonnull String externalName) {
+    return myLibrariesByExternalName.get(externalName);
+  }
+
+  /**
+   * @return previously seen library equal to the given one or the given library itself, so equal libraries of different modules
+   * share a single instance
+   */
+  @Nonnull
+  public LibraryData internLibrary(@Nonnull LibraryData library) {
+    LibraryData previous = myInternedLibraries.putIfAbsent(library, library);
+    return previous != null ? previous : library;
+  }
 //
 //  @Nullable
 //  public <T> T getExtraProject(Class<T> modelClazz) {
@@ -18,8 +18,14 @@ package org.jetbrains.plugins.gradle.model.data;
 import jakarta.annotation.Nonnull;
 import java.io.File;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
 
 /**
+ * A file copied to the war, or a directory whose content matching {@link #getIncludes()} and not matching {@link #getExcludes()}
+ * is copied to the war. Files of a directory resource are not reported separately, so the patterns must be applied when the
+ * directory content is copied.
+ *
  * @author Vladislav.Soroka
  * @since 2/10/14
  */
@@ -33,12 +39,29 @@ public class WebResource implements Serializable
 	private final String warRelativePath;
 	@Nonnull
 	private final File file;
+	// null for the resources deserialized from the data stored before patterns were introduced
+	private final Set<String> myIncludes;
+	private final Set<String> myExcludes;
 
 	public WebResource(@Nonnull WarDirectory warDirectory, @Nonnull String warRelativePath, @Nonnull File file)
+	{
+		this(warDirectory, warRelativePath, file, Collections.<String>emptySet(), Collections.<String>emptySet());
+	}
+
+	/**
+	 * Creates the resource for the directory <code>file</code>, whose content matching given patterns is copied to the war
+	 */
+	public WebResource(@Nonnull WarDirectory warDirectory,
+					   @Nonnull String warRelativePath,
+					   @Nonnull File file,
+					   @Nonnull Set<String> includes,
+					   @Nonnull Set<String> excludes)
 	{
 		myWarDirectory = warDirectory;
 		this.warRelativePath = getAdjustedPath(warRelativePath);
 		this.file = file;
+		myIncludes = includes;
+		myExcludes = excludes;
 	}
 
 	@Nonnull
@@ -59,6 +82,24 @@ public class WebResource implements Serializable
 		return file;
 	}
 
+	/**
+	 * @return include patterns of the resource directory, empty set means all the files are included
+	 */
+	@Nonnull
+	public Set<String> getIncludes()
+	{
+		return myIncludes == null ? Collections.<String>emptySet() : myIncludes;
+	}
+
+	/**
+	 * @return exclude patterns of the resource directory
+	 */
+	@Nonnull
+	public Set<String> getExcludes()
+	{
+		return myExcludes == null ? Collections.<String>emptySet() : myExcludes;
+	}
+
 	private static String getAdjustedPath(final @Nonnull String path)
 	{
 		return path.isEmpty() || path.charAt(0) != '/' ? '/' + path : path;
@@ -89,6 +130,14 @@ public class WebResource implements Serializable
 		{
 			return false;
 		}
+		if(!getIncludes().equals(resource.getIncludes()))
+		{
+			return false;
+		}
+		if(!getExcludes().equals(resource.getExcludes()))
+		{
+			return false;
+		}
 
 		return true;
 	}
@@ -99,6 +148,8 @@ public class WebResource implements Serializable
 		int result = myWarDirectory.hashCode();
 		result = 31 * result + warRelativePath.hashCode();
 		result = 31 * result + file.getPath().hashCode();
+		result = 31 * result + getIncludes().hashCode();
+		result = 31 * result + getExcludes().hashCode();
 		return result;
 	}
 
@@ -109,6 +160,8 @@ public class WebResource implements Serializable
 				"myWarDirectory=" + myWarDirectory +
 				", warRelativePath='" + warRelativePath + '\'' +
 				", file=" + file +
+				", includes=" + getIncludes() +
+				", excludes=" + getExcludes() +
 				'}';
 	}
 }
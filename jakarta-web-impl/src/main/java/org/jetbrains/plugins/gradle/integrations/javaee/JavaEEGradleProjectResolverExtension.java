@@ -32,6 +32,7 @@ import org.jetbrains.plugins.gradle.tooling.model.ProjectImportAction;
 import org.jetbrains.plugins.gradle.tooling.web.WebConfiguration;
 
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -77,7 +78,13 @@ public class JavaEEGradleProjectResolverExtension extends AbstractProjectResolve
             }
 
             final WarDirectory warDirectory = WarDirectory.fromPath(resource.getWarDirectory());
-            return new WebResource(warDirectory, resource.getRelativePath(), resource.getFile());
+            return new WebResource(warDirectory, resource.getRelativePath(), resource.getFile(),
+                copyOf(resource.getIncludes()), copyOf(resource.getExcludes()));
         });
     }
+
+    // tooling models are proxies, patterns must be copied before they are stored in the data nodes
+    private static Set<String> copyOf(Set<String> patterns) {
+        return patterns == null || patterns.isEmpty() ? Collections.<String>emptySet() : new LinkedHashSet<>(patterns);
+    }
 }
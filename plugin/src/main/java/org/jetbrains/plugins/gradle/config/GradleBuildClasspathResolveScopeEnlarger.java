@@ -15,19 +15,15 @@
  */
 package org.jetbrains.plugins.gradle.config;
 
-import com.intellij.java.language.impl.psi.NonClasspathDirectoriesScope;
-import com.intellij.java.language.psi.PsiElementFinder;
 import consulo.annotation.component.ExtensionImpl;
 import consulo.content.scope.SearchScope;
 import consulo.language.psi.ResolveScopeEnlarger;
 import consulo.project.Project;
 import consulo.virtualFileSystem.VirtualFile;
-import consulo.virtualFileSystem.util.VirtualFileUtil;
 import jakarta.annotation.Nonnull;
+import org.jetbrains.plugins.gradle.service.GradleBuildClasspathManager;
 import org.jetbrains.plugins.groovy.GroovyFileType;
 
-import java.util.List;
-
 /**
  * @author Vladislav.Soroka
  * @since 2014-05-16
@@ -38,14 +34,9 @@ public class GradleBuildClasspathResolveScopeEnlarger extends ResolveScopeEnlarg
     public SearchScope getAdditionalResolveScope(@Nonnull VirtualFile file, Project project) {
         String fileExtension = file.getExtension();
         if (GroovyFileType.DEFAULT_EXTENSION.equals(fileExtension)) {
-            GradleClassFinder gradleClassFinder =
-                project.getExtensionPoint(PsiElementFinder.class).findExtensionOrFail(GradleClassFinder.class);
-
-            final List<VirtualFile> roots = gradleClassFinder.getClassRoots();
-            for (VirtualFile root : roots) {
-                if (VirtualFileUtil.isAncestor(root, file, true)) {
-                    return NonClasspathDirectoriesScope.compose(roots);
-                }
+            GradleBuildClasspathManager classpathManager = GradleBuildClasspathManager.getInstance(project);
+            if (classpathManager.isUnderClasspathRoot(file)) {
+                return classpathManager.getAllClasspathScope();
             }
         }
         return null;
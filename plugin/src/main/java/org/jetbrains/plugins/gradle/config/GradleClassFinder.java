@@ -36,8 +36,8 @@ import jakarta.inject.Inject;
 import org.jetbrains.plugins.gradle.service.GradleBuildClasspathManager;
 import org.jetbrains.plugins.groovy.GroovyFileType;
 
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author peter
@@ -47,13 +47,17 @@ public class GradleClassFinder extends NonClasspathClassFinder {
     @Nonnull
     private final GradleBuildClasspathManager myBuildClasspathManager;
     private final Map<String, PackageDirectoryCache> myCaches;
+    // modules with the same build classpath share the package cache, the key is the list of the classpath roots
+    private final Map<List<VirtualFile>, PackageDirectoryCache> myClasspathCaches = new ConcurrentHashMap<>();
 
     @Inject
     public GradleClassFinder(@Nonnull Project project, @Nonnull GradleBuildClasspathManager buildClasspathManager) {
         super(project, JavaFileType.DEFAULT_EXTENSION, GroovyFileType.DEFAULT_EXTENSION);
         myBuildClasspathManager = buildClasspathManager;
 
-        myCaches = ConcurrentFactoryMap.createMap(path -> createCache(myBuildClasspathManager.getModuleClasspathEntries(path)));
+        myCaches = ConcurrentFactoryMap.createMap(
+            path -> myClasspathCaches.computeIfAbsent(myBuildClasspathManager.getModuleClasspathEntries(path), roots -> createCache(roots))
+        );
     }
 
     @Override
@@ -74,6 +78,21 @@ public class GradleClassFinder extends NonClasspathClassFinder {
     public void clearCache() {
         super.clearCache();
         myCaches.clear();
+        myClasspathCaches.clear();
+    }
+
+    /**
+     * Drops the roots of all the build scripts and the package caches of the given modules only, the caches of other
+     * modules stay valid.
+     */
+    public void clearCache(@Nonnull Collection<String> changedModulePaths) {
+        super.clearCache();
+        myCaches.keySet().removeAll(changedModulePaths);
+
+        // the caches which are still used by other modules are kept, the changed modules may get one of them back
+        Set<PackageDirectoryCache> usedCaches = Collections.newSetFromMap(new IdentityHashMap<>());
+        usedCaches.addAll(myCaches.values());
+        myClasspathCaches.values().retainAll(usedCaches);
     }
 
     @Override
@@ -55,6 +55,10 @@ public class GradleLibraryNamesMixer {
   /**
    * Tries to ensure that given libraries have distinct names, i.e. traverses all of them and tries to generate
    * unique name for those with equal names.
+   * <p/>
+   * Every round groups libraries by their current names and prefixes names of all libraries from the colliding groups by
+   * the next significant parent directory name. Path of every library is walked only once, so the whole processing takes
+   * <code>O(libraries * path depth)</code>.
    * 
    * @param libraries  libraries to process
    */
@@ -63,163 +67,149 @@ public class GradleLibraryNamesMixer {
     if (libraries.isEmpty()) {
       return;
     }
-    Map<String, Wrapped> names = new HashMap<>();
-    List<Wrapped> data = new ArrayList<>();
+    List<Wrapped> data = new ArrayList<>(libraries.size());
     for (DataNode<LibraryData> library : libraries) {
-      Wrapped wrapped = new Wrapped(library.getData());
-      data.add(wrapped);
+      data.add(new Wrapped(library.getData()));
     }
-    boolean mixed = false;
-    while (!mixed) {
-      mixed = doMixNames(data, names);
+
+    boolean progress = true;
+    while (progress) {
+      progress = false;
+      for (List<Wrapped> group : groupByName(data).values()) {
+        if (group.size() > 1) {
+          progress |= mixNames(group);
+        }
+      }
     }
   }
 
-  /**
-   * Does the same as {@link #mixNames(Collection)} but uses given <code>('library name; wrapped library'}</code> mappings cache.
-   * 
-   * @param libraries  libraries to process
-   * @param cache      cache to use
-   * @return           <code>true</code> if all of the given libraries have distinct names now; <code>false</code> otherwise
-   */
-  private static boolean doMixNames(@Nonnull Collection<Wrapped> libraries, @Nonnull Map<String, Wrapped> cache) {
-    cache.clear();
-    for (Wrapped current : libraries) {
-      Wrapped previous = cache.remove(current.library.getExternalName());
-      if (previous == null) {
-        cache.put(current.library.getExternalName(), current);
-      }
-      else {
-        mixNames(current, previous);
-        return current.library.getExternalName().equals(previous.library.getExternalName()); // Stop processing if it's not possible to generate
-      }
+  @Nonnull
+  private static Map<String, List<Wrapped>> groupByName(@Nonnull Collection<Wrapped> libraries) {
+    Map<String, List<Wrapped>> result = new LinkedHashMap<>();
+    for (Wrapped wrapped : libraries) {
+      result.computeIfAbsent(wrapped.library.getExternalName(), k -> new ArrayList<>(2)).add(wrapped);
     }
-    return true;
+    return result;
   }
 
   /**
    * Tries to generate distinct names for the given wrapped libraries (assuming that they have equal names at the moment).
    * 
-   * @param wrapped1  one of the libraries with equal names
-   * @param wrapped2  another library which name is equal to the name of the given one
+   * @param group  libraries with equal names
+   * @return       <code>true</code> if name of at least one library was changed; <code>false</code> otherwise
    */
-  @SuppressWarnings("AssignmentToForLoopParameter")
-  private static void mixNames(@Nonnull Wrapped wrapped1, @Nonnull Wrapped wrapped2) {
-    if (!wrapped1.prepare() || !wrapped2.prepare()) {
-      return;
+  private static boolean mixNames(@Nonnull List<Wrapped> group) {
+    boolean progress = false;
+    for (Wrapped wrapped : group) {
+      progress |= wrapped.advance();
     }
-    String wrapped1AltText = null;
-    String wrapped2AltText = null;
-    
-    for (File file1 = wrapped1.currentFile, file2 = wrapped2.currentFile;
-         file1 != null && file2 != null;
-         file1 = file1.getParentFile(), file2 = file2.getParentFile())
-    {
-      while (file1 != null && !StringUtil.isEmpty(file1.getName()) && NON_UNIQUE_PATH_ENTRIES.containsKey(file1.getName())) {
-        if (NON_UNIQUE_PATH_ENTRIES.get(file1.getName())) {
-          if (StringUtil.isEmpty(wrapped1AltText)) {
-            wrapped1AltText = file1.getName();
-          }
-          else {
-            wrapped1AltText += NAME_SEPARATOR + file1.getName();
-          }
-        }
-        file1 = file1.getParentFile();
-      }
-      while (file2 != null && !StringUtil.isEmpty(file2.getName()) && NON_UNIQUE_PATH_ENTRIES.containsKey(file2.getName())) {
-        if (NON_UNIQUE_PATH_ENTRIES.get(file2.getName())) {
-          if (StringUtil.isEmpty(wrapped2AltText)) {
-            wrapped2AltText = file2.getName();
-          }
-          else {
-            wrapped2AltText += NAME_SEPARATOR + file2.getName();
-          }
-        }
-        file2 = file2.getParentFile();
-      }
-      
-      if (file1 == null) {
-        wrapped1.nextFile();
-      }
-      else if (!wrapped1.library.getExternalName().startsWith(file1.getName())) {
-        wrapped1.library.setExternalName(file1.getName() + NAME_SEPARATOR + wrapped1.library.getExternalName());
-      }
-      if (file2 == null) {
-        wrapped2.nextFile();
-      }
-      else if (!wrapped2.library.getExternalName().startsWith(file2.getName())) {
-        wrapped2.library.setExternalName(file2.getName() + NAME_SEPARATOR + wrapped2.library.getExternalName());
-      }
 
-      if (wrapped1.library.getExternalName().equals(wrapped2.library.getExternalName())) {
-        if (wrapped1AltText != null) {
-          diversifyName(wrapped1AltText, wrapped1, file1);
-          return;
-        }
-        else if (wrapped2AltText != null) {
-          diversifyName(wrapped2AltText, wrapped2, file1);
-          return;
-        }
-      }
-      else {
-        return;
+    for (List<Wrapped> stillEqual : groupByName(group).values()) {
+      if (stillEqual.size() < 2) {
+        continue;
       }
-
-      if (file1 == null || file2 == null) {
-        return;
+      for (Wrapped wrapped : stillEqual) {
+        progress |= wrapped.diversify();
       }
     }
-  }
-
-  @SuppressWarnings("ConstantConditions")
-  private static void diversifyName(@Nonnull String changeText, @Nonnull Wrapped wrapped, @Nullable File file) {
-    String name = wrapped.library.getExternalName();
-    int i = file == null ? - 1 : name.indexOf(file.getName());
-    final String newName;
-    if (i >= 0) {
-      newName = name.substring(0, i + file.getName().length()) + NAME_SEPARATOR + changeText + name.substring(i + file.getName().length());
-    }
-    else {
-      newName = changeText + NAME_SEPARATOR + name;
-    }
-    wrapped.library.setExternalName(newName);
+    return progress;
   }
 
   /**
    * Wraps target library and hold auxiliary information required for the processing.
    */
   private static class Wrapped {
-    /** Holds list of files that may be used for name generation. */
-    public final Set<File> files = new HashSet<File>();
-    /** File that was used for the current name generation. */
-    public File        currentFile;
     /** Target library. */
-    public LibraryData library;
+    public final LibraryData library;
+    /** Significant names of the library file and its parents, starting from the file itself. */
+    private List<String> segments;
+    /** Accumulated 'alternative' text (see {@link #NON_UNIQUE_PATH_ENTRIES}) met before the segment with the same index. */
+    private List<String> altTexts;
+    /** Index of the next segment to use for the name generation. */
+    private int depth;
+    /** Last segment used for the name generation. */
+    private String currentSegment;
+    private boolean diversified;
 
     Wrapped(@Nonnull LibraryData library) {
       this.library = library;
-      for (LibraryPathType pathType : LibraryPathType.values()) {
-        for (String path : library.getPaths(pathType)) {
-          files.add(new File(path));
-        }
-      }
     }
 
-    public boolean prepare() {
-      if (currentFile != null) {
-        return true;
+    /**
+     * Prefixes library name by the next significant parent directory name.
+     */
+    public boolean advance() {
+      if (segments == null) {
+        init();
       }
-      return nextFile();
+      while (depth < segments.size()) {
+        String segment = segments.get(depth++);
+        String name = library.getExternalName();
+        if (!name.startsWith(segment)) {
+          library.setExternalName(segment + NAME_SEPARATOR + name);
+          currentSegment = segment;
+          return true;
+        }
+      }
+      return false;
     }
 
-    public boolean nextFile() {
-      if (files.isEmpty()) {
+    /**
+     * Inserts accumulated 'alternative' text (e.g. <code>'test'</code>) after the last used segment.
+     */
+    public boolean diversify() {
+      if (diversified || depth == 0 || depth > altTexts.size()) {
+        return false;
+      }
+      String changeText = altTexts.get(depth - 1);
+      if (StringUtil.isEmpty(changeText)) {
         return false;
       }
-      Iterator<File> iterator = files.iterator();
-      currentFile = iterator.next();
-      iterator.remove();
+      diversified = true;
+
+      String name = library.getExternalName();
+      int i = currentSegment == null ? -1 : name.indexOf(currentSegment);
+      final String newName;
+      if (i >= 0) {
+        int end = i + currentSegment.length();
+        newName = name.substring(0, end) + NAME_SEPARATOR + changeText + name.substring(end);
+      }
+      else {
+        newName = changeText + NAME_SEPARATOR + name;
+      }
+      library.setExternalName(newName);
       return true;
     }
+
+    private void init() {
+      segments = new ArrayList<>();
+      altTexts = new ArrayList<>();
+      File file = getFirstFile();
+      String altText = null;
+      for (; file != null; file = file.getParentFile()) {
+        String name = file.getName();
+        if (StringUtil.isEmpty(name)) {
+          break;
+        }
+        Boolean useAsAltText = NON_UNIQUE_PATH_ENTRIES.get(name);
+        if (useAsAltText == null) {
+          segments.add(name);
+          altTexts.add(altText);
+        }
+        else if (useAsAltText) {
+          altText = altText == null ? name : altText + NAME_SEPARATOR + name;
+        }
+      }
+    }
+
+    @Nullable
+    private File getFirstFile() {
+      for (LibraryPathType pathType : LibraryPathType.values()) {
+        for (String path : library.getPaths(pathType)) {
+          return new File(path);
+        }
+      }
+      return null;
+    }
   }
 }
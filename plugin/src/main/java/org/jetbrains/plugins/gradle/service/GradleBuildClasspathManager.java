@@ -1,10 +1,12 @@
 // Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package org.jetbrains.plugins.gradle.service;
 
+import com.intellij.java.language.impl.psi.NonClasspathDirectoriesScope;
 import com.intellij.java.language.psi.PsiElementFinder;
 import consulo.annotation.component.ComponentScope;
 import consulo.annotation.component.ServiceAPI;
 import consulo.annotation.component.ServiceImpl;
+import consulo.content.scope.SearchScope;
 import consulo.externalSystem.ExternalSystemManager;
 import consulo.externalSystem.model.project.ExternalModuleBuildClasspathPojo;
 import consulo.externalSystem.model.project.ExternalProjectBuildClasspathPojo;
@@ -22,9 +24,14 @@ import org.jetbrains.plugins.gradle.config.GradleClassFinder;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Build script classpath of the linked gradle projects and their modules.
+ * <p/>
+ * {@link #reload()} is incremental: the roots of the paths which are still valid are reused, classpath lists of the unchanged
+ * modules are kept as is, and only the package caches of the changed modules are dropped.
+ *
  * @author Vladislav.Soroka
  */
 @Singleton
@@ -34,17 +41,20 @@ public class GradleBuildClasspathManager {
     @Nonnull
     private final Project myProject;
 
-    @Nonnull
-    private volatile List<VirtualFile> allFilesCache;
+    private final Object myReloadLock = new Object();
+    private final AtomicBoolean myReloadScheduled = new AtomicBoolean();
 
     @Nonnull
-    private final AtomicReference<Map<String/*module path*/, List<VirtualFile> /*module build classpath*/>> myClasspathMap =
-        new AtomicReference<>(new HashMap<>());
+    private volatile State myState = new State(
+        Collections.<String, ProjectClasspath>emptyMap(),
+        Collections.<String, ModuleClasspath>emptyMap(),
+        Collections.<String, VirtualFile>emptyMap(),
+        Collections.<VirtualFile>emptyList()
+    );
 
     @Inject
     public GradleBuildClasspathManager(@Nonnull Project project) {
         myProject = project;
-        allFilesCache = new ArrayList<>();
     }
 
     @Nonnull
@@ -57,77 +67,304 @@ public class GradleBuildClasspathManager {
         assert manager != null;
         AbstractExternalSystemLocalSettings localSettings = manager.getLocalSettingsProvider().apply(myProject);
 
-        Map<String/*module path*/, List<VirtualFile> /*module build classpath*/> map = new HashMap<>();
-
-        for (final ExternalProjectBuildClasspathPojo projectBuildClasspathPojo : localSettings.getProjectBuildClasspath().values()) {
-            final List<VirtualFile> projectBuildClasspath = new ArrayList<>();
-            for (String path : projectBuildClasspathPojo.getProjectBuildClasspath()) {
-                final VirtualFile virtualFile = ExternalSystemApiUtil.findLocalFileByPath(path);
-                ContainerUtil.addIfNotNull(
-                    projectBuildClasspath,
-                    virtualFile == null || virtualFile.isDirectory()
-                        ? virtualFile
-                        : ArchiveVfsUtil.getJarRootForLocalFile(virtualFile)
-                );
-            }
+        Set<String> changedModules = new HashSet<>();
+        boolean allFilesChanged;
+        synchronized (myReloadLock) {
+            State oldState = myState;
+            Map<String, VirtualFile> roots = new HashMap<>();
+            Map<String, ProjectClasspath> projects = new HashMap<>();
+            Map<String/*module path*/, ModuleClasspath /*module build classpath*/> modules = new HashMap<>();
+
+            for (Map.Entry<String, ExternalProjectBuildClasspathPojo> entry : localSettings.getProjectBuildClasspath().entrySet()) {
+                ExternalProjectBuildClasspathPojo projectBuildClasspathPojo = entry.getValue();
+                List<String> projectPaths = new ArrayList<>(projectBuildClasspathPojo.getProjectBuildClasspath());
 
-            for (final ExternalModuleBuildClasspathPojo moduleBuildClasspathPojo : projectBuildClasspathPojo.getModulesBuildClasspath()
-                .values()) {
-                final List<VirtualFile> moduleBuildClasspath = ContainerUtil.newArrayList(projectBuildClasspath);
-                for (String path : moduleBuildClasspathPojo.getEntries()) {
-                    final VirtualFile virtualFile = ExternalSystemApiUtil.findLocalFileByPath(path);
-                    ContainerUtil.addIfNotNull(
-                        moduleBuildClasspath,
-                        virtualFile == null || virtualFile.isDirectory()
-                            ? virtualFile
-                            : ArchiveVfsUtil.getJarRootForLocalFile(virtualFile)
-                    );
+                ProjectClasspath projectClasspath = oldState.myProjects.get(entry.getKey());
+                if (projectClasspath == null || !projectClasspath.myPaths.equals(projectPaths)) {
+                    projectClasspath = new ProjectClasspath(projectPaths, resolve(projectPaths, oldState.myRoots, roots));
+                }
+                else if (isResolved(projectPaths, projectClasspath.myFiles)) {
+                    keepRoots(projectPaths, oldState.myRoots, roots);
+                }
+                else {
+                    // e.g. buildSrc sources or a jar appeared since the previous reload
+                    List<VirtualFile> projectFiles = resolve(projectPaths, oldState.myRoots, roots);
+                    if (!projectFiles.equals(projectClasspath.myFiles)) {
+                        projectClasspath = new ProjectClasspath(projectPaths, projectFiles);
+                    }
                 }
+                projects.put(entry.getKey(), projectClasspath);
 
-                map.put(moduleBuildClasspathPojo.getPath(), moduleBuildClasspath);
+                // modules of the same build mostly have the same classpath, it's resolved and stored once
+                Map<List<String>, ModuleClasspath> classpathSets = new HashMap<>();
+                for (ExternalModuleBuildClasspathPojo moduleBuildClasspathPojo : projectBuildClasspathPojo.getModulesBuildClasspath().values()) {
+                    String modulePath = moduleBuildClasspathPojo.getPath();
+                    List<String> modulePaths = moduleBuildClasspathPojo.getEntries();
+                    ModuleClasspath oldModuleClasspath = oldState.myModules.get(modulePath);
+
+                    ModuleClasspath moduleClasspath = classpathSets.get(modulePaths);
+                    if (moduleClasspath == null) {
+                        if (oldModuleClasspath != null
+                            && oldModuleClasspath.myProjectFiles == projectClasspath.myFiles
+                            && oldModuleClasspath.myPaths.equals(modulePaths)) {
+                            if (isResolved(modulePaths, oldModuleClasspath.myOwnFiles)) {
+                                moduleClasspath = oldModuleClasspath;
+                                keepRoots(modulePaths, oldState.myRoots, roots);
+                            }
+                            else {
+                                List<VirtualFile> ownFiles = resolve(modulePaths, oldState.myRoots, roots);
+                                moduleClasspath = ownFiles.equals(oldModuleClasspath.myOwnFiles)
+                                    ? oldModuleClasspath
+                                    : new ModuleClasspath(oldModuleClasspath.myPaths, projectClasspath.myFiles, ownFiles);
+                            }
+                        }
+                        else {
+                            List<String> paths = new ArrayList<>(modulePaths);
+                            moduleClasspath = new ModuleClasspath(paths, projectClasspath.myFiles, resolve(paths, oldState.myRoots, roots));
+                        }
+                        classpathSets.put(moduleClasspath.myPaths, moduleClasspath);
+                    }
+
+                    if (moduleClasspath != oldModuleClasspath) {
+                        changedModules.add(modulePath);
+                    }
+                    modules.put(modulePath, moduleClasspath);
+                }
             }
-        }
 
-        myClasspathMap.set(map);
+            for (String modulePath : oldState.myModules.keySet()) {
+                if (!modules.containsKey(modulePath)) {
+                    changedModules.add(modulePath);
+                }
+            }
+
+            allFilesChanged = !changedModules.isEmpty();
+            List<VirtualFile> allFiles = oldState.myAllFiles;
+            if (allFilesChanged) {
+                Set<VirtualFile> set = new LinkedHashSet<>();
+                Set<ModuleClasspath> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (ModuleClasspath virtualFiles : modules.values()) {
+                    if (visited.add(virtualFiles)) {
+                        set.addAll(virtualFiles);
+                    }
+                }
+                allFiles = Collections.unmodifiableList(new ArrayList<>(set));
+            }
 
-        Set<VirtualFile> set = new LinkedHashSet<>();
-        for (List<VirtualFile> virtualFiles : myClasspathMap.get().values()) {
-            set.addAll(virtualFiles);
+            myState = allFilesChanged
+                ? new State(projects, modules, roots, allFiles)
+                : new State(projects, modules, roots, oldState);
         }
-        allFilesCache = ContainerUtil.newArrayList(set);
-        for (PsiElementFinder finder : PsiElementFinder.EP_NAME.getExtensions(myProject)) {
-            if (finder instanceof GradleClassFinder gradleClassFinder) {
-                gradleClassFinder.clearCache();
-                break;
+
+        if (allFilesChanged) {
+            for (PsiElementFinder finder : PsiElementFinder.EP_NAME.getExtensions(myProject)) {
+                if (finder instanceof GradleClassFinder gradleClassFinder) {
+                    gradleClassFinder.clearCache(changedModules);
+                    break;
+                }
             }
         }
     }
 
     @Nonnull
     public List<VirtualFile> getAllClasspathEntries() {
-        checkRootsValidity(allFilesCache);
-        return allFilesCache;
+        return checkRootsValidity(myState.myAllFiles);
     }
 
     @Nonnull
     public List<VirtualFile> getModuleClasspathEntries(@Nonnull String externalModulePath) {
-        checkRootsValidity(myClasspathMap.get().get(externalModulePath));
-        List<VirtualFile> virtualFiles = myClasspathMap.get().get(externalModulePath);
-        return virtualFiles == null ? Collections.emptyList() : virtualFiles;
+        List<VirtualFile> virtualFiles = myState.myModules.get(externalModulePath);
+        return virtualFiles == null ? Collections.emptyList() : checkRootsValidity(virtualFiles);
     }
 
-    private void checkRootsValidity(@Nullable List<VirtualFile> virtualFiles) {
-        if (virtualFiles == null) {
-            return;
+    /**
+     * @return <code>true</code> if the file is located under one of the build classpath roots (the root itself does not count)
+     */
+    public boolean isUnderClasspathRoot(@Nonnull VirtualFile file) {
+        Set<VirtualFile> roots = myState.myAllRoots;
+        if (roots.isEmpty()) {
+            return false;
         }
+        for (VirtualFile parent = file.getParent(); parent != null; parent = parent.getParent()) {
+            if (roots.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return scope of all the build classpath roots, it's composed once per change of the roots
+     */
+    @Nonnull
+    public SearchScope getAllClasspathScope() {
+        State state = myState;
+        SearchScope scope = state.myAllClasspathScope;
+        if (scope == null) {
+            List<VirtualFile> roots = checkRootsValidity(state.myAllFiles);
+            scope = NonClasspathDirectoriesScope.compose(roots);
+            if (roots == state.myAllFiles) {
+                // do not keep the scope built without invalid roots, the state is going to be reloaded
+                state.myAllClasspathScope = scope;
+            }
+        }
+        return scope;
+    }
 
-        if (!virtualFiles.isEmpty()) {
-            for (VirtualFile file : virtualFiles) {
-                if (!file.isValid()) {
+    /**
+     * Invalid roots (e.g. a jar was deleted) are skipped by the getters, the classpath is reloaded in background then.
+     */
+    @Nonnull
+    private List<VirtualFile> checkRootsValidity(@Nonnull List<VirtualFile> virtualFiles) {
+        if (isValid(virtualFiles)) {
+            return virtualFiles;
+        }
+
+        if (myReloadScheduled.compareAndSet(false, true)) {
+            myProject.getApplication().executeOnPooledThread(() -> {
+                myReloadScheduled.set(false);
+                if (!myProject.isDisposed()) {
                     reload();
-                    break;
+                }
+            });
+        }
+        return ContainerUtil.filter(virtualFiles, VirtualFile::isValid);
+    }
+
+    /**
+     * @return <code>true</code> if every path was resolved to a root and all the roots are still valid. Paths which did not
+     * resolve are looked up again on every reload.
+     */
+    private static boolean isResolved(@Nonnull List<String> paths, @Nonnull List<VirtualFile> virtualFiles) {
+        return virtualFiles.size() == paths.size() && isValid(virtualFiles);
+    }
+
+    private static boolean isValid(@Nonnull List<VirtualFile> virtualFiles) {
+        for (VirtualFile file : virtualFiles) {
+            if (!file.isValid()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Resolves the classpath roots, the roots of the previous reload are reused while they are valid.
+     */
+    @Nonnull
+    private static List<VirtualFile> resolve(
+        @Nonnull List<String> paths,
+        @Nonnull Map<String, VirtualFile> oldRoots,
+        @Nonnull Map<String, VirtualFile> roots
+    ) {
+        List<VirtualFile> result = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            VirtualFile root = roots.get(path);
+            if (root == null) {
+                root = oldRoots.get(path);
+                if (root == null || !root.isValid()) {
+                    root = findRoot(path);
+                }
+                if (root != null) {
+                    roots.put(path, root);
                 }
             }
+            ContainerUtil.addIfNotNull(result, root);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static void keepRoots(@Nonnull List<String> paths, @Nonnull Map<String, VirtualFile> oldRoots, @Nonnull Map<String, VirtualFile> roots) {
+        for (String path : paths) {
+            VirtualFile root = oldRoots.get(path);
+            if (root != null) {
+                roots.put(path, root);
+            }
+        }
+    }
+
+    @Nullable
+    private static VirtualFile findRoot(@Nonnull String path) {
+        final VirtualFile virtualFile = ExternalSystemApiUtil.findLocalFileByPath(path);
+        return virtualFile == null || virtualFile.isDirectory()
+            ? virtualFile
+            : ArchiveVfsUtil.getJarRootForLocalFile(virtualFile);
+    }
+
+    private static class State {
+        private final Map<String/*linked project path*/, ProjectClasspath> myProjects;
+        private final Map<String/*module path*/, ModuleClasspath> myModules;
+        private final Map<String/*classpath entry path*/, VirtualFile> myRoots;
+        private final List<VirtualFile> myAllFiles;
+        private final Set<VirtualFile> myAllRoots;
+        @Nullable
+        private volatile SearchScope myAllClasspathScope;
+
+        private State(
+            @Nonnull Map<String, ProjectClasspath> projects,
+            @Nonnull Map<String, ModuleClasspath> modules,
+            @Nonnull Map<String, VirtualFile> roots,
+            @Nonnull List<VirtualFile> allFiles
+        ) {
+            myProjects = projects;
+            myModules = modules;
+            myRoots = roots;
+            myAllFiles = allFiles;
+            myAllRoots = new HashSet<>(allFiles);
+        }
+
+        /**
+         * Creates the state with the same classpath roots as the given one.
+         */
+        private State(
+            @Nonnull Map<String, ProjectClasspath> projects,
+            @Nonnull Map<String, ModuleClasspath> modules,
+            @Nonnull Map<String, VirtualFile> roots,
+            @Nonnull State state
+        ) {
+            myProjects = projects;
+            myModules = modules;
+            myRoots = roots;
+            myAllFiles = state.myAllFiles;
+            myAllRoots = state.myAllRoots;
+            myAllClasspathScope = state.myAllClasspathScope;
+        }
+    }
+
+    private static class ProjectClasspath {
+        private final List<String> myPaths;
+        private final List<VirtualFile> myFiles;
+
+        private ProjectClasspath(@Nonnull List<String> paths, @Nonnull List<VirtualFile> files) {
+            myPaths = paths;
+            myFiles = files;
+        }
+    }
+
+    /**
+     * Build classpath of a module: the classpath of its project followed by the own entries of the module. The project part
+     * is shared by all the modules of the project, the whole classpath is shared by the modules with the same entries.
+     */
+    private static class ModuleClasspath extends AbstractList<VirtualFile> implements RandomAccess {
+        private final List<String> myPaths;
+        private final List<VirtualFile> myProjectFiles;
+        private final List<VirtualFile> myOwnFiles;
+
+        private ModuleClasspath(@Nonnull List<String> paths, @Nonnull List<VirtualFile> projectFiles, @Nonnull List<VirtualFile> ownFiles) {
+            myPaths = paths;
+            myProjectFiles = projectFiles;
+            myOwnFiles = ownFiles;
+        }
+
+        @Override
+        public VirtualFile get(int index) {
+            int projectSize = myProjectFiles.size();
+            return index < projectSize ? myProjectFiles.get(index) : myOwnFiles.get(index - projectSize);
+        }
+
+        @Override
+        public int size() {
+            return myProjectFiles.size() + myOwnFiles.size();
         }
     }
 }
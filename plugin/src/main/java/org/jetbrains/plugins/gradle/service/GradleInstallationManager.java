@@ -31,9 +31,8 @@ import org.jetbrains.plugins.gradle.util.GradleUtil;
 import org.jetbrains.plugins.groovy.config.GroovyConfigUtils;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -68,6 +67,9 @@ public class GradleInstallationManager {
     @Nullable
     private Ref<File> myCachedGradleHomeFromPath;
 
+    // gradle home -> classpath of the distribution, see findGradleSdkClasspath()
+    private final Map<File, SdkClasspath> mySdkClasspathCache = new ConcurrentHashMap<>();
+
     /**
      * Allows to get file handles for the gradle binaries to use.
      *
@@ -391,8 +393,12 @@ public class GradleInstallationManager {
         }
 
         if (rootProjectPath == null) {
+            Set<String> checkedPaths = new HashSet<>();
             for (Module module : ModuleManager.getInstance(project).getModules()) {
                 rootProjectPath = ExternalSystemApiUtil.getExtensionSystemOption(module, ExternalSystemConstants.ROOT_PROJECT_PATH_KEY);
+                if (!checkedPaths.add(rootProjectPath)) {
+                    continue;
+                }
                 List<File> result = findGradleSdkClasspath(project, rootProjectPath);
                 if (!result.isEmpty()) {
                     return result;
@@ -407,17 +413,41 @@ public class GradleInstallationManager {
     }
 
     private List<File> findGradleSdkClasspath(Project project, String rootProjectPath) {
-        List<File> result = new ArrayList<>();
-
         if (StringUtil.isEmpty(rootProjectPath)) {
-            return result;
+            return Collections.emptyList();
         }
 
         File gradleHome = getGradleHome(project, rootProjectPath);
 
         if (gradleHome == null || !gradleHome.isDirectory()) {
-            return result;
+            return Collections.emptyList();
+        }
+
+        gradleHome = gradleHome.getAbsoluteFile();
+        long stamp = getDistributionStamp(gradleHome);
+        SdkClasspath classpath = mySdkClasspathCache.get(gradleHome);
+        if (classpath == null || classpath.myStamp != stamp) {
+            classpath = new SdkClasspath(stamp, Collections.unmodifiableList(collectGradleSdkClasspath(gradleHome)));
+            mySdkClasspathCache.put(gradleHome, classpath);
         }
+        return classpath.myFiles;
+    }
+
+    /**
+     * @return modification stamp of the directories which contents define the classpath of the distribution
+     */
+    private static long getDistributionStamp(@Nonnull File gradleHome) {
+        File libs = new File(gradleHome, "lib");
+        long stamp = gradleHome.lastModified();
+        stamp = 31 * stamp + libs.lastModified();
+        stamp = 31 * stamp + new File(libs, "plugins").lastModified();
+        stamp = 31 * stamp + new File(gradleHome, "src").lastModified();
+        return stamp;
+    }
+
+    @Nonnull
+    private List<File> collectGradleSdkClasspath(@Nonnull File gradleHome) {
+        List<File> result = new ArrayList<>();
 
         final Collection<File> libraries = getAllLibraries(gradleHome);
         if (libraries == null) {
@@ -443,6 +473,17 @@ public class GradleInstallationManager {
         return result;
     }
 
+    private static class SdkClasspath {
+        private final long myStamp;
+        @Nonnull
+        private final List<File> myFiles;
+
+        private SdkClasspath(long stamp, @Nonnull List<File> files) {
+            myStamp = stamp;
+            myFiles = files;
+        }
+    }
+
     private boolean isGradleBuildClasspathLibrary(File file) {
         String fileName = file.getName();
         return ANY_GRADLE_JAR_FILE_PATTERN.matcher(fileName).matches()
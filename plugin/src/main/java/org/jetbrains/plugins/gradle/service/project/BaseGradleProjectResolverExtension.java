@@ -389,7 +389,7 @@ public class BaseGradleProjectResolverExtension implements GradleProjectResolver
             DependencyScope scope = parseScope(dependency.getScope());
 
             if (dependency instanceof IdeaModuleDependency) {
-                ModuleDependencyData d = buildDependency(ideModule, (IdeaModuleDependency) dependency, ideProject);
+                ModuleDependencyData d = buildDependency(ideModule, (IdeaModuleDependency) dependency);
                 d.setExported(dependency.getExported());
                 if (scope != null) {
                     d.setScope(scope);
@@ -596,10 +596,9 @@ public class BaseGradleProjectResolverExtension implements GradleProjectResolver
     }
 
     @Nonnull
-    private static ModuleDependencyData buildDependency(
+    private ModuleDependencyData buildDependency(
         @Nonnull DataNode<ModuleData> ownerModule,
-        @Nonnull IdeaModuleDependency dependency,
-        @Nonnull DataNode<ProjectData> ideProject
+        @Nonnull IdeaModuleDependency dependency
     ) throws IllegalStateException {
         String moduleName = dependency.getTargetModuleName();
         if (moduleName == null) {
@@ -611,21 +610,16 @@ public class BaseGradleProjectResolverExtension implements GradleProjectResolver
             ));
         }
 
-        Set<String> registeredModuleNames = new HashSet<>();
-        Collection<DataNode<ModuleData>> modulesDataNode = ExternalSystemApiUtil.getChildren(ideProject, ProjectKeys.MODULE);
-        for (DataNode<ModuleData> moduleDataNode : modulesDataNode) {
-            String name = moduleDataNode.getData().getExternalName();
-            registeredModuleNames.add(name);
-            if (name.equals(moduleName)) {
-                return new ModuleDependencyData(ownerModule.getData(), moduleDataNode.getData());
-            }
+        DataNode<ModuleData> moduleDataNode = resolverCtx.findModule(moduleName);
+        if (moduleDataNode != null) {
+            return new ModuleDependencyData(ownerModule.getData(), moduleDataNode.getData());
         }
         throw new IllegalStateException(String.format(
             "Can't parse gradle module dependency '%s'. Reason: no module with such name (%s) is found. "
                 + "Registered modules: %s",
             dependency,
             moduleName,
-            registeredModuleNames
+            new TreeSet<>(resolverCtx.getRegisteredModuleNames())
         ));
     }
 
@@ -707,11 +701,18 @@ public class BaseGradleProjectResolverExtension implements GradleProjectResolver
             library.addPath(LibraryPathType.DOC, javadocPath.getAbsolutePath());
         }
 
-        if (level == LibraryLevel.PROJECT && !GradleProjectResolverUtil.linkProjectLibrary(ideProject, library)) {
-            level = LibraryLevel.MODULE;
+        LibraryData sharedLibrary = null;
+        if (level == LibraryLevel.PROJECT) {
+            sharedLibrary = GradleProjectResolverUtil.linkProjectLibrary(resolverCtx, ideProject, library);
+            if (sharedLibrary == null) {
+                level = LibraryLevel.MODULE;
+            }
+        }
+        if (sharedLibrary == null) {
+            sharedLibrary = resolverCtx.internLibrary(library);
         }
 
-        return new LibraryDependencyData(ownerModule.getData(), library, level);
+        return new LibraryDependencyData(ownerModule.getData(), sharedLibrary, level);
     }
 
     private void attachGradleSdkSources(
@@ -0,0 +1,258 @@
+package org.jetbrains.plugins.gradle.service.project;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.application.Application;
+import consulo.disposer.Disposable;
+import consulo.gradle.setting.DistributionType;
+import consulo.gradle.setting.GradleExecutionSettings;
+import consulo.logging.Logger;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Singleton;
+import org.gradle.tooling.ProjectConnection;
+import org.jetbrains.plugins.gradle.util.GradleEnvironment;
+import org.jetbrains.plugins.gradle.util.GradleUtil;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps gradle tooling API connections open between imports and task runs, so repeated requests to the same project skip
+ * connector bootstrap and distribution resolution.
+ * <p/>
+ * The pool is disabled unless {@link GradleEnvironment#POOL_CONNECTIONS} is set, a new connection is opened and closed for every
+ * request then. Connections are shared by the project directory and all the settings which affect the connector (distribution,
+ * gradle home, service directory, java home, wrapper properties stamp). Unused connection is closed when it stays idle longer
+ * than {@link GradleExecutionSettings#getRemoteProcessIdleTtlInMs()}; connections are not pooled if the ttl is not positive.
+ * All the pooled connections are closed when the application is disposed.
+ * <p/>
+ * {@link ProjectConnection} is thread-safe, so the same connection may be leased several times simultaneously.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.APPLICATION)
+@ServiceImpl
+public class GradleConnectionPool implements Disposable {
+    private static final Logger LOG = Logger.getInstance(GradleConnectionPool.class);
+
+    private final Map<Key, Entry> myEntries = new HashMap<>();
+    private final Map<ProjectConnection, Entry> myLeased = new IdentityHashMap<>();
+    @Nullable
+    private ScheduledExecutorService myEvictionExecutor;
+    private boolean myDisposed;
+
+    @Nonnull
+    public static GradleConnectionPool getInstance() {
+        return Application.get().getInstance(GradleConnectionPool.class);
+    }
+
+    /**
+     * Returns pooled connection for the given project or a new one created by the given factory. Every call must be followed
+     * by {@link #release(ProjectConnection)}.
+     */
+    @Nonnull
+    public ProjectConnection acquire(
+        @Nonnull String projectDir,
+        @Nullable GradleExecutionSettings settings,
+        @Nonnull Supplier<ProjectConnection> factory
+    ) {
+        long idleTtl = settings != null ? settings.getRemoteProcessIdleTtlInMs() : -1;
+        if (!GradleEnvironment.POOL_CONNECTIONS || idleTtl <= 0) {
+            return factory.get();
+        }
+
+        Key key = new Key(projectDir, settings, idleTtl);
+        synchronized (this) {
+            if (myDisposed) {
+                return factory.get();
+            }
+            Entry entry = myEntries.get(key);
+            if (entry != null) {
+                entry.myLeases++;
+                myLeased.put(entry.myConnection, entry);
+                return entry.myConnection;
+            }
+        }
+
+        // connect outside of the lock, it may take a while
+        ProjectConnection connection = factory.get();
+        synchronized (this) {
+            if (myDisposed) {
+                return connection;
+            }
+            Entry entry = myEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, connection);
+                myEntries.put(key, entry);
+            }
+            else {
+                // somebody was faster
+                closeQuietly(connection);
+            }
+            entry.myLeases++;
+            myLeased.put(entry.myConnection, entry);
+            return entry.myConnection;
+        }
+    }
+
+    public void release(@Nonnull ProjectConnection connection) {
+        synchronized (this) {
+            Entry entry = myLeased.get(connection);
+            if (entry != null) {
+                if (--entry.myLeases == 0) {
+                    myLeased.remove(connection);
+                    entry.myLastUsed = System.currentTimeMillis();
+                    if (entry.myEvictionTask == null) {
+                        scheduleEviction(entry, entry.myKey.myIdleTtl);
+                    }
+                }
+                return;
+            }
+        }
+        // not pooled connection
+        closeQuietly(connection);
+    }
+
+    @Override
+    public void dispose() {
+        List<ProjectConnection> toClose = new ArrayList<>();
+        synchronized (this) {
+            myDisposed = true;
+            for (Entry entry : myEntries.values()) {
+                toClose.add(entry.myConnection);
+            }
+            myEntries.clear();
+            myLeased.clear();
+            if (myEvictionExecutor != null) {
+                myEvictionExecutor.shutdownNow();
+                myEvictionExecutor = null;
+            }
+        }
+        for (ProjectConnection connection : toClose) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Every entry has at most one pending eviction task, it's rescheduled while the entry is used.
+     */
+    private synchronized void scheduleEviction(@Nonnull Entry entry, long delay) {
+        if (myEvictionExecutor == null) {
+            myEvictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Gradle connections eviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        entry.myEvictionTask = myEvictionExecutor.schedule(() -> evictIfIdle(entry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void evictIfIdle(@Nonnull Entry entry) {
+        synchronized (this) {
+            entry.myEvictionTask = null;
+            if (myDisposed || myEntries.get(entry.myKey) != entry || entry.myLeases > 0) {
+                // leased entry is scheduled again on release
+                return;
+            }
+            long idle = System.currentTimeMillis() - entry.myLastUsed;
+            if (idle < entry.myKey.myIdleTtl) {
+                scheduleEviction(entry, entry.myKey.myIdleTtl - idle);
+                return;
+            }
+            myEntries.remove(entry.myKey);
+        }
+        closeQuietly(entry.myConnection);
+    }
+
+    private static void closeQuietly(@Nonnull ProjectConnection connection) {
+        try {
+            connection.close();
+        }
+        catch (Throwable e) {
+            LOG.debug("Can't close gradle connection", e);
+        }
+    }
+
+    private static class Entry {
+        private final Key myKey;
+        private final ProjectConnection myConnection;
+        private int myLeases;
+        private long myLastUsed;
+        @Nullable
+        private ScheduledFuture<?> myEvictionTask;
+
+        private Entry(Key key, ProjectConnection connection) {
+            myKey = key;
+            myConnection = connection;
+        }
+    }
+
+    private static class Key {
+        private final String myProjectDir;
+        private final DistributionType myDistributionType;
+        @Nullable
+        private final String myGradleHome;
+        @Nullable
+        private final String myServiceDirectory;
+        @Nullable
+        private final String myJavaHome;
+        private final boolean myVerbose;
+        private final long myIdleTtl;
+        /**
+         * Wrapper distribution is resolved once the connection is established, so the connection must not be reused after
+         * the wrapper properties change.
+         */
+        private final long myWrapperStamp;
+
+        private Key(@Nonnull String projectDir, @Nonnull GradleExecutionSettings settings, long idleTtl) {
+            myProjectDir = projectDir;
+            myDistributionType = settings.getDistributionType();
+            myGradleHome = settings.getGradleHome();
+            myServiceDirectory = settings.getServiceDirectory();
+            myJavaHome = settings.getJavaHome();
+            myVerbose = settings.isVerboseProcessing();
+            myIdleTtl = idleTtl;
+            File wrapperProperties = myDistributionType.isWrapped() ? GradleUtil.findDefaultWrapperPropertiesFile(projectDir) : null;
+            myWrapperStamp = wrapperProperties != null ? wrapperProperties.lastModified() : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key)o;
+            return myVerbose == key.myVerbose
+                && myIdleTtl == key.myIdleTtl
+                && myWrapperStamp == key.myWrapperStamp
+                && myProjectDir.equals(key.myProjectDir)
+                && myDistributionType == key.myDistributionType
+                && Objects.equals(myGradleHome, key.myGradleHome)
+                && Objects.equals(myServiceDirectory, key.myServiceDirectory)
+                && Objects.equals(myJavaHome, key.myJavaHome);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                myProjectDir,
+                myDistributionType,
+                myGradleHome,
+                myServiceDirectory,
+                myJavaHome,
+                myVerbose,
+                myIdleTtl,
+                myWrapperStamp
+            );
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package org.jetbrains.plugins.gradle.service.project;
 
 import com.google.gson.GsonBuilder;
+import consulo.container.boot.ContainerPathManager;
 import consulo.container.plugin.PluginManager;
 import consulo.execution.util.CommandLineTokenizer;
 import consulo.externalSystem.model.task.ExternalSystemTaskId;
@@ -48,10 +49,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 /**
@@ -115,6 +122,33 @@ public class GradleExecutionHelper {
     }
 
 
+    /**
+     * Same as {@link #prepare(LongRunningOperation, ExternalSystemTaskId, GradleExecutionSettings, ExternalSystemTaskNotificationListener,
+     * List, List, ProjectConnection)} but takes the build environment from the given import session instead of requesting it
+     * from the daemon again.
+     */
+    public static void prepare(
+        @Nonnull LongRunningOperation operation,
+        @Nonnull final ExternalSystemTaskId id,
+        @Nullable GradleExecutionSettings settings,
+        @Nonnull final ExternalSystemTaskNotificationListener listener,
+        @Nonnull List<String> extraJvmArgs,
+        @Nonnull List<String> commandLineArgs,
+        @Nonnull GradleImportSession session
+    ) {
+        prepare(
+            operation,
+            id,
+            settings,
+            listener,
+            extraJvmArgs,
+            commandLineArgs,
+            session::getBuildEnvironment,
+            new OutputWrapper(listener, id, true),
+            new OutputWrapper(listener, id, false)
+        );
+    }
+
     @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
     public static void prepare(
         @Nonnull LongRunningOperation operation,
@@ -126,6 +160,31 @@ public class GradleExecutionHelper {
         @Nonnull ProjectConnection connection,
         @Nonnull final OutputStream standardOutput,
         @Nonnull final OutputStream standardError
+    ) {
+        prepare(
+            operation,
+            id,
+            settings,
+            listener,
+            extraJvmArgs,
+            commandLineArgs,
+            () -> getBuildEnvironment(connection),
+            standardOutput,
+            standardError
+        );
+    }
+
+    @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
+    private static void prepare(
+        @Nonnull LongRunningOperation operation,
+        @Nonnull final ExternalSystemTaskId id,
+        @Nullable GradleExecutionSettings settings,
+        @Nonnull final ExternalSystemTaskNotificationListener listener,
+        @Nonnull List<String> extraJvmArgs,
+        @Nonnull List<String> commandLineArgs,
+        @Nonnull Supplier<BuildEnvironment> buildEnvironmentSupplier,
+        @Nonnull final OutputStream standardOutput,
+        @Nonnull final OutputStream standardError
     ) {
         if (settings == null) {
             return;
@@ -147,7 +206,7 @@ public class GradleExecutionHelper {
         jvmArgs.addAll(extraJvmArgs);
 
         if (!jvmArgs.isEmpty()) {
-            BuildEnvironment buildEnvironment = getBuildEnvironment(connection);
+            BuildEnvironment buildEnvironment = buildEnvironmentSupplier.get();
             Collection<String> merged =
                 buildEnvironment != null ? mergeJvmArgs(buildEnvironment.getJava().getJvmArguments(), jvmArgs) : jvmArgs;
 
@@ -210,7 +269,8 @@ public class GradleExecutionHelper {
             catch (Exception ignore) {
             }
         }
-        ProjectConnection connection = getConnection(projectDir, settings);
+        final GradleConnectionPool connectionPool = GradleConnectionPool.getInstance();
+        ProjectConnection connection = connectionPool.acquire(projectDir, settings, () -> getConnection(projectDir, settings));
         try {
             return f.apply(connection);
         }
@@ -224,7 +284,7 @@ public class GradleExecutionHelper {
         }
         finally {
             try {
-                connection.close();
+                connectionPool.release(connection);
                 if (userDir != null) {
                     // restore original user.dir property
                     System.setProperty("user.dir", userDir);
@@ -252,6 +312,38 @@ public class GradleExecutionHelper {
         }
 
         ProjectConnection connection = getConnection(projectPath, settings);
+        try {
+            ensureInstalledWrapper(id, projectPath, settings, listener, new GradleImportSession(connection));
+        }
+        finally {
+            try {
+                connection.close();
+            }
+            catch (Throwable e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Installs gradle wrapper if necessary using the connection of the given import session.
+     */
+    public void ensureInstalledWrapper(
+        @Nonnull ExternalSystemTaskId id,
+        @Nonnull String projectPath,
+        @Nonnull GradleExecutionSettings settings,
+        @Nonnull ExternalSystemTaskNotificationListener listener,
+        @Nonnull GradleImportSession session
+    ) {
+        if (!settings.getDistributionType().isWrapped()) {
+            return;
+        }
+
+        if (settings.getDistributionType() == DistributionType.DEFAULT_WRAPPED
+            && GradleUtil.findDefaultWrapperPropertiesFile(projectPath) != null) {
+            return;
+        }
+
         try {
             try {
                 final File tempFile = FileUtil.createTempFile("wrap", ".gradle");
@@ -269,16 +361,18 @@ public class GradleExecutionHelper {
                 };
                 FileUtil.writeToFile(tempFile, StringUtil.join(lines, Platform.current().os().lineSeparator().getSeparatorString()));
 
-                BuildLauncher launcher = getBuildLauncher(
+                BuildLauncher launcher = session.getConnection().newBuild();
+                prepare(
+                    launcher,
                     id,
-                    connection,
                     settings,
                     listener,
                     new ArrayList<>(),
                     ContainerUtil.newArrayList(
                         GradleConstants.INIT_SCRIPT_CMD_OPTION,
                         tempFile.getAbsolutePath()
-                    )
+                    ),
+                    session
                 );
                 launcher.forTasks("wrapper");
                 launcher.run();
@@ -292,14 +386,6 @@ public class GradleExecutionHelper {
         catch (Throwable e) {
             LOG.warn("Can't update wrapper", e);
         }
-        finally {
-            try {
-                connection.close();
-            }
-            catch (Throwable e) {
-                // ignore
-            }
-        }
     }
 
     private static List<String> mergeJvmArgs(Iterable<String> jvmArgs1, Iterable<String> jvmArgs2) {
@@ -400,7 +486,10 @@ public class GradleExecutionHelper {
             toolingExtensionPaths.addJarByClass(GsonBuilder.class);
             toolingExtensionPaths.addJarByClass(DefaultExternalProject.class);
 
-            for (File file : toolingExtensionFiles) {
+            // keep the script content stable between imports
+            List<File> sortedToolingExtensionFiles = new ArrayList<>(toolingExtensionFiles);
+            sortedToolingExtensionFiles.sort(Comparator.comparing(File::getPath));
+            for (File file : sortedToolingExtensionFiles) {
                 toolingExtensionPaths.addJar(file);
             }
 
@@ -418,9 +507,7 @@ public class GradleExecutionHelper {
                 s += buildSrcDefaultInitScript;
             }
 
-            final File tempFile = FileUtil.createTempFile("ijinit", '.' + GradleConstants.EXTENSION, true);
-            FileUtil.writeToFile(tempFile, s);
-            return tempFile;
+            return writeInitScript(s);
         }
         catch (Exception e) {
             LOG.warn("Can't generate IJ gradle init script", e);
@@ -431,6 +518,59 @@ public class GradleExecutionHelper {
         }
     }
 
+    /**
+     * Init script is stored by the hash of its content, so gradle finds the script compiled by the previous imports in its
+     * script cache instead of compiling a new temporary file every time.
+     */
+    @Nonnull
+    private static File writeInitScript(@Nonnull String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        File initScriptsDir = new File(ContainerPathManager.get().getSystemPath(), "gradle/init");
+        try {
+            File scriptFile = new File(initScriptsDir, "ijinit-" + hash(bytes) + '.' + GradleConstants.EXTENSION);
+            if (scriptFile.isFile() && scriptFile.length() == bytes.length) {
+                return scriptFile;
+            }
+
+            Files.createDirectories(initScriptsDir.toPath());
+            // write the whole content before the script becomes visible to the concurrent imports
+            Path tempFile = Files.createTempFile(initScriptsDir.toPath(), "ijinit", ".tmp");
+            try {
+                Files.write(tempFile, bytes);
+                Files.move(tempFile, scriptFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                // e.g. the file is being read by another import on Windows, it has the same content anyway
+                Files.deleteIfExists(tempFile);
+                if (!scriptFile.isFile()) {
+                    throw e;
+                }
+            }
+            return scriptFile;
+        }
+        catch (IOException e) {
+            LOG.debug("Can't store gradle init script in " + initScriptsDir, e);
+            File tempFile = FileUtil.createTempFile("ijinit", '.' + GradleConstants.EXTENSION, true);
+            FileUtil.writeToFile(tempFile, content);
+            return tempFile;
+        }
+    }
+
+    @Nonnull
+    private static String hash(@Nonnull byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                builder.append(String.format("%02x", digest[i] & 0xFF));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(Arrays.hashCode(bytes));
+        }
+    }
+
     @Nullable
     public static String getBuildSrcDefaultInitScript() {
         InputStream stream =
@@ -451,7 +591,7 @@ public class GradleExecutionHelper {
     }
 
     @Nullable
-    private static BuildEnvironment getBuildEnvironment(@Nonnull ProjectConnection connection) {
+    static BuildEnvironment getBuildEnvironment(@Nonnull ProjectConnection connection) {
         try {
             return connection.getModel(BuildEnvironment.class);
         }
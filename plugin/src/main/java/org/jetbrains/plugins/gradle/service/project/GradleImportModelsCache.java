@@ -0,0 +1,491 @@
+package org.jetbrains.plugins.gradle.service.project;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.gradle.GradleConstants;
+import consulo.logging.Logger;
+import consulo.project.Project;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Singleton;
+import org.gradle.tooling.model.GradleProject;
+import org.gradle.tooling.model.idea.IdeaModule;
+import org.gradle.tooling.model.idea.IdeaProject;
+import org.jetbrains.plugins.gradle.tooling.model.ProjectImportAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers models of the last import of every linked gradle project together with fingerprints of the build
+ * configuration files of its modules.
+ * <p/>
+ * On the next import extra models are requested only for the modules whose build script, <code>gradle.properties</code>,
+ * scripts located in the module directory or script plugins applied by them were changed, the same inputs of all the parent
+ * projects are taken into account as well. Any change of the root project configuration (settings, root scripts, root
+ * <code>gradle.properties</code>, version catalogs, <code>buildSrc</code> and included builds) or of the requested models
+ * invalidates the whole entry.
+ * <p/>
+ * The inputs are found by scanning the scripts for <code>apply from</code> and <code>includeBuild</code> calls with literal
+ * arguments. If a script refers to an input which can't be enumerated this way (computed path, remote script), its module
+ * or the whole project is never considered up-to-date.
+ * <p/>
+ * The models are kept while the IDE project is open.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.PROJECT)
+@ServiceImpl
+public class GradleImportModelsCache {
+    private static final Logger LOG = Logger.getInstance(GradleImportModelsCache.class);
+
+    private static final String GRADLE_PROPERTIES = "gradle.properties";
+    private static final String KOTLIN_SCRIPT_EXTENSION = GradleConstants.EXTENSION + ".kts";
+    private static final String VERSION_CATALOG_EXTENSION = "toml";
+    private static final String[] SETTINGS_SCRIPTS = {
+        GradleConstants.SETTINGS_FILE_NAME,
+        GradleConstants.KOTLIN_DSL_SETTINGS_FILE_NAME
+    };
+
+    // 'apply from: "path"', 'apply(from: "path")' and 'apply(from = "path")' with a literal path
+    private static final Pattern LITERAL_APPLY_FROM =
+        Pattern.compile("(?<!\\w)apply\\s*\\(?\\s*from\\s*[:=]\\s*(['\"])([^'\"$]+)\\1");
+    private static final Pattern APPLY_FROM = Pattern.compile("(?<!\\w)apply\\s*\\(?\\s*from\\b");
+    // 'apply { from ... }' of groovy scripts, the kotlin 'apply {}' is the scope function in most cases
+    private static final Pattern APPLY_BLOCK = Pattern.compile("(?<![.\\w])apply\\s*\\{");
+    private static final Pattern LITERAL_INCLUDE_BUILD = Pattern.compile("\\bincludeBuild\\s*\\(?\\s*(['\"])([^'\"$]+)\\1");
+    private static final Pattern INCLUDE_BUILD = Pattern.compile("\\bincludeBuild\\b");
+    // version catalogs declared in settings by 'from(files("path"))'
+    private static final Pattern LITERAL_VERSION_CATALOG = Pattern.compile("(['\"])([^'\"$]+\\.toml)\\1");
+
+    private final Map<String, Entry> myEntries = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public static GradleImportModelsCache getInstance(@Nonnull Project project) {
+        return project.getInstance(GradleImportModelsCache.class);
+    }
+
+    /**
+     * @return gradle paths of the modules which extra models can be reused from the previous import
+     */
+    @Nonnull
+    public Set<String> getUpToDateModulePaths(@Nonnull String projectPath, @Nonnull Set<Class> modelClasses) {
+        Entry entry = myEntries.get(projectPath);
+        if (entry == null) {
+            return Collections.emptySet();
+        }
+
+        if (entry.myRootFingerprint == null
+            || !entry.myModelClasses.equals(getClassNames(modelClasses))
+            || !entry.myRootFingerprint.equals(getRootFingerprint(new File(entry.myRootDir)))) {
+            myEntries.remove(projectPath);
+            return Collections.emptySet();
+        }
+
+        Set<String> result = new HashSet<>();
+        Map<String, Boolean> unchangedModules = new HashMap<>();
+        for (String modulePath : entry.myModules.keySet()) {
+            if (isUnchanged(entry.myModules, modulePath, unchangedModules)) {
+                result.add(modulePath);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format(
+                "%d of %d modules of '%s' are up-to-date",
+                result.size(),
+                entry.myModules.size(),
+                projectPath
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the inputs of the module and of all its parents except the root project were not changed
+     */
+    private static boolean isUnchanged(
+        @Nonnull Map<String, ModuleInputs> modules,
+        @Nonnull String modulePath,
+        @Nonnull Map<String, Boolean> unchangedModules
+    ) {
+        Boolean unchanged = unchangedModules.get(modulePath);
+        if (unchanged == null) {
+            ModuleInputs inputs = modules.get(modulePath);
+            // subprojects {} and allprojects {} blocks and the build script classpath of the parents apply to the module
+            unchanged = inputs != null
+                && inputs.myFingerprint != null
+                && inputs.myFingerprint.equals(getModuleFingerprint(inputs.myModuleDir, inputs.myBuildScript))
+                && (inputs.myParentPath == null || isUnchanged(modules, inputs.myParentPath, unchangedModules));
+            unchangedModules.put(modulePath, unchanged);
+        }
+        return unchanged;
+    }
+
+    /**
+     * Fills the given models with extra models of the up-to-date modules taken from the previous import.
+     */
+    public void mergePreviousModels(
+        @Nonnull String projectPath,
+        @Nonnull ProjectImportAction.AllModels allModels,
+        @Nonnull Set<String> upToDateModulePaths
+    ) {
+        Entry entry = myEntries.get(projectPath);
+        if (entry != null && !upToDateModulePaths.isEmpty()) {
+            allModels.copyExtraProjects(entry.myModels, upToDateModulePaths);
+        }
+    }
+
+    public void update(
+        @Nonnull String projectPath,
+        @Nonnull Set<Class> modelClasses,
+        @Nonnull ProjectImportAction.AllModels allModels
+    ) {
+        IdeaProject ideaProject = allModels.getIdeaProject();
+        File rootDir = null;
+        Map<String, ModuleInputs> modules = new HashMap<>();
+        for (IdeaModule module : ideaProject.getModules()) {
+            GradleProject gradleProject = module.getGradleProject();
+            File moduleDir;
+            File buildScript;
+            try {
+                moduleDir = gradleProject.getProjectDirectory();
+                buildScript = gradleProject.getBuildScript().getSourceFile();
+            }
+            catch (RuntimeException e) {
+                // old gradle versions do not provide project directories
+                myEntries.remove(projectPath);
+                return;
+            }
+
+            GradleProject parent = gradleProject.getParent();
+            if (parent == null) {
+                rootDir = moduleDir;
+                // the root project scripts are a part of the root fingerprint
+                continue;
+            }
+            modules.put(
+                gradleProject.getPath(),
+                new ModuleInputs(
+                    moduleDir,
+                    buildScript,
+                    parent.getParent() == null ? null : parent.getPath(),
+                    getModuleFingerprint(moduleDir, buildScript)
+                )
+            );
+        }
+
+        if (rootDir == null) {
+            myEntries.remove(projectPath);
+            return;
+        }
+
+        myEntries.put(
+            projectPath,
+            new Entry(rootDir.getPath(), getRootFingerprint(rootDir), getClassNames(modelClasses), modules, allModels)
+        );
+    }
+
+    public void invalidate(@Nonnull String projectPath) {
+        myEntries.remove(projectPath);
+    }
+
+    @Nonnull
+    private static Set<String> getClassNames(@Nonnull Set<Class> classes) {
+        Set<String> result = new HashSet<>();
+        for (Class aClass : classes) {
+            result.add(aClass.getName());
+        }
+        return result;
+    }
+
+    /**
+     * @return fingerprint of the configuration shared by all the modules, <code>null</code> if some of its inputs can't be enumerated
+     */
+    @Nullable
+    private static Long getRootFingerprint(@Nonnull File rootDir) {
+        Fingerprint fingerprint = new Fingerprint();
+        Set<File> visitedScripts = new HashSet<>();
+        addScripts(rootDir, rootDir, fingerprint, visitedScripts);
+
+        File gradleDir = new File(rootDir, "gradle");
+        addScripts(gradleDir, rootDir, fingerprint, visitedScripts);
+        File[] versionCatalogs = gradleDir.listFiles(file -> file.getName().endsWith('.' + VERSION_CATALOG_EXTENSION));
+        if (versionCatalogs != null) {
+            Arrays.sort(versionCatalogs);
+            for (File versionCatalog : versionCatalogs) {
+                fingerprint.add(getFileFingerprint(versionCatalog));
+            }
+        }
+        fingerprint.add(getFileFingerprint(new File(gradleDir, "wrapper/gradle-wrapper.properties")));
+
+        File buildSrc = new File(rootDir, "buildSrc");
+        if (buildSrc.isDirectory()) {
+            fingerprint.add(getTreeFingerprint(buildSrc));
+        }
+
+        Set<File> visitedBuilds = new HashSet<>();
+        visitedBuilds.add(rootDir.toPath().normalize().toFile());
+        addIncludedBuilds(rootDir, fingerprint, visitedBuilds);
+        return fingerprint.get();
+    }
+
+    /**
+     * @return fingerprint of the inputs of the module itself, <code>null</code> if some of its inputs can't be enumerated
+     */
+    @Nullable
+    private static Long getModuleFingerprint(@Nullable File moduleDir, @Nullable File buildScript) {
+        Fingerprint fingerprint = new Fingerprint();
+        Set<File> visitedScripts = new HashSet<>();
+        fingerprint.add(getFileFingerprint(buildScript));
+        if (moduleDir == null) {
+            // applied scripts are resolved against the project directory
+            fingerprint.markIncomplete();
+            return fingerprint.get();
+        }
+        if (buildScript != null && buildScript.isFile()) {
+            addAppliedScripts(buildScript, moduleDir, fingerprint, visitedScripts);
+        }
+        addScripts(moduleDir, moduleDir, fingerprint, visitedScripts);
+        return fingerprint.get();
+    }
+
+    /**
+     * Takes into account gradle scripts and <code>gradle.properties</code> located directly at the given directory and the
+     * script plugins applied by these scripts.
+     *
+     * @param baseDir directory the paths of the applied scripts are resolved against
+     */
+    private static void addScripts(
+        @Nonnull File dir,
+        @Nonnull File baseDir,
+        @Nonnull Fingerprint fingerprint,
+        @Nonnull Set<File> visitedScripts
+    ) {
+        File[] files = dir.listFiles(file -> {
+            String name = file.getName();
+            return GRADLE_PROPERTIES.equals(name)
+                || name.endsWith('.' + GradleConstants.EXTENSION)
+                || name.endsWith('.' + KOTLIN_SCRIPT_EXTENSION);
+        });
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+        fingerprint.add(files.length);
+        for (File file : files) {
+            fingerprint.add(getFileFingerprint(file));
+            if (!GRADLE_PROPERTIES.equals(file.getName()) && file.isFile()) {
+                addAppliedScripts(file, baseDir, fingerprint, visitedScripts);
+            }
+        }
+    }
+
+    private static void addAppliedScripts(
+        @Nonnull File script,
+        @Nonnull File baseDir,
+        @Nonnull Fingerprint fingerprint,
+        @Nonnull Set<File> visitedScripts
+    ) {
+        if (!visitedScripts.add(script)) {
+            return;
+        }
+        String text = loadText(script);
+        if (text == null) {
+            fingerprint.markIncomplete();
+            return;
+        }
+
+        int literalCount = 0;
+        Matcher matcher = LITERAL_APPLY_FROM.matcher(text);
+        while (matcher.find()) {
+            literalCount++;
+            String path = matcher.group(2);
+            if (path.contains("://")) {
+                // remote scripts may change without any local change
+                fingerprint.markIncomplete();
+                continue;
+            }
+            File applied = resolve(baseDir, path);
+            fingerprint.add(getFileFingerprint(applied));
+            if (applied.isFile()) {
+                addAppliedScripts(applied, baseDir, fingerprint, visitedScripts);
+            }
+        }
+
+        boolean groovyScript = script.getName().endsWith('.' + GradleConstants.EXTENSION);
+        if (count(APPLY_FROM, text) != literalCount || (groovyScript && APPLY_BLOCK.matcher(text).find())) {
+            fingerprint.markIncomplete();
+        }
+    }
+
+    /**
+     * Takes into account the trees of the builds included by the settings of the given build (both regular included builds
+     * and plugin builds of <code>pluginManagement</code>) and the version catalogs imported by the settings.
+     */
+    private static void addIncludedBuilds(@Nonnull File buildDir, @Nonnull Fingerprint fingerprint, @Nonnull Set<File> visitedBuilds) {
+        for (String settingsScript : SETTINGS_SCRIPTS) {
+            File settingsFile = new File(buildDir, settingsScript);
+            if (!settingsFile.isFile()) {
+                continue;
+            }
+            String text = loadText(settingsFile);
+            if (text == null) {
+                fingerprint.markIncomplete();
+                continue;
+            }
+
+            int literalCount = 0;
+            Matcher matcher = LITERAL_INCLUDE_BUILD.matcher(text);
+            while (matcher.find()) {
+                literalCount++;
+                File includedBuild = resolve(buildDir, matcher.group(2));
+                if (visitedBuilds.add(includedBuild)) {
+                    fingerprint.add(includedBuild.getPath().hashCode());
+                    if (includedBuild.isDirectory()) {
+                        fingerprint.add(getTreeFingerprint(includedBuild));
+                        addIncludedBuilds(includedBuild, fingerprint, visitedBuilds);
+                    }
+                }
+            }
+            if (count(INCLUDE_BUILD, text) != literalCount) {
+                fingerprint.markIncomplete();
+            }
+
+            matcher = LITERAL_VERSION_CATALOG.matcher(text);
+            while (matcher.find()) {
+                fingerprint.add(getFileFingerprint(resolve(buildDir, matcher.group(2))));
+            }
+        }
+    }
+
+    @Nonnull
+    private static File resolve(@Nonnull File baseDir, @Nonnull String path) {
+        File file = new File(path);
+        return (file.isAbsolute() ? file : new File(baseDir, path)).toPath().normalize().toFile();
+    }
+
+    private static int count(@Nonnull Pattern pattern, @Nonnull String text) {
+        int result = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            result++;
+        }
+        return result;
+    }
+
+    @Nullable
+    private static String loadText(@Nonnull File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            LOG.debug("Unable to read " + file, e);
+            return null;
+        }
+    }
+
+    private static long getTreeFingerprint(@Nonnull File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        Arrays.sort(files);
+        long result = files.length;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                // build output of buildSrc itself must not affect the fingerprint
+                if (!"build".equals(file.getName()) && !".gradle".equals(file.getName())) {
+                    result = 31 * result + getTreeFingerprint(file);
+                }
+            }
+            else {
+                result = 31 * result + getFileFingerprint(file);
+            }
+        }
+        return result;
+    }
+
+    private static long getFileFingerprint(@Nullable File file) {
+        if (file == null || !file.isFile()) {
+            return 0;
+        }
+        long result = file.getPath().hashCode();
+        result = 31 * result + file.lastModified();
+        result = 31 * result + file.length();
+        return result;
+    }
+
+    private static class Entry {
+        private final String myRootDir;
+        @Nullable
+        private final Long myRootFingerprint;
+        private final Set<String> myModelClasses;
+        private final Map<String, ModuleInputs> myModules;
+        private final ProjectImportAction.AllModels myModels;
+
+        private Entry(
+            String rootDir,
+            @Nullable Long rootFingerprint,
+            Set<String> modelClasses,
+            Map<String, ModuleInputs> modules,
+            ProjectImportAction.AllModels models
+        ) {
+            myRootDir = rootDir;
+            myRootFingerprint = rootFingerprint;
+            myModelClasses = modelClasses;
+            myModules = modules;
+            myModels = models;
+        }
+    }
+
+    private static class ModuleInputs {
+        @Nullable
+        private final File myModuleDir;
+        @Nullable
+        private final File myBuildScript;
+        // gradle path of the parent project, null for the children of the root project
+        @Nullable
+        private final String myParentPath;
+        // null if some of the inputs can't be enumerated
+        @Nullable
+        private final Long myFingerprint;
+
+        private ModuleInputs(
+            @Nullable File moduleDir,
+            @Nullable File buildScript,
+            @Nullable String parentPath,
+            @Nullable Long fingerprint
+        ) {
+            myModuleDir = moduleDir;
+            myBuildScript = buildScript;
+            myParentPath = parentPath;
+            myFingerprint = fingerprint;
+        }
+    }
+
+    private static class Fingerprint {
+        private long myHash = 1;
+        private boolean myComplete = true;
+
+        private void add(long value) {
+            myHash = 31 * myHash + value;
+        }
+
+        private void markIncomplete() {
+            myComplete = false;
+        }
+
+        @Nullable
+        private Long get() {
+            return myComplete ? myHash : null;
+        }
+    }
+}
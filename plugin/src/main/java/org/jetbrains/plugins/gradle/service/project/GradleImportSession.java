@@ -0,0 +1,55 @@
+package org.jetbrains.plugins.gradle.service.project;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.model.build.BuildEnvironment;
+
+/**
+ * Tooling API state shared by all daemon requests of a single project import: the connection to the linked project
+ * and its {@link BuildEnvironment}, which is requested at most once.
+ */
+public class GradleImportSession {
+    @Nonnull
+    private final ProjectConnection myConnection;
+    @Nullable
+    private BuildEnvironment myBuildEnvironment;
+    private boolean myBuildEnvironmentLoaded;
+
+    public GradleImportSession(@Nonnull ProjectConnection connection) {
+        myConnection = connection;
+    }
+
+    @Nonnull
+    public ProjectConnection getConnection() {
+        return myConnection;
+    }
+
+    @Nullable
+    public synchronized BuildEnvironment getBuildEnvironment() {
+        if (!myBuildEnvironmentLoaded) {
+            myBuildEnvironment = GradleExecutionHelper.getBuildEnvironment(myConnection);
+            myBuildEnvironmentLoaded = true;
+        }
+        return myBuildEnvironment;
+    }
+
+    /**
+     * Creates a session for an auxiliary build of the same import (e.g. <code>buildSrc</code>), which reuses
+     * already known build environment.
+     */
+    @Nonnull
+    public GradleImportSession withConnection(@Nonnull ProjectConnection connection) {
+        if (connection == myConnection) {
+            return this;
+        }
+        GradleImportSession session = new GradleImportSession(connection);
+        synchronized (this) {
+            if (myBuildEnvironmentLoaded && myBuildEnvironment != null) {
+                session.myBuildEnvironment = myBuildEnvironment;
+                session.myBuildEnvironmentLoaded = true;
+            }
+        }
+        return session;
+    }
+}
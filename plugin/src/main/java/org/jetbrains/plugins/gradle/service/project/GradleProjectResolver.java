@@ -20,6 +20,7 @@ import consulo.gradle.setting.ClassHolder;
 import consulo.gradle.setting.GradleExecutionSettings;
 import consulo.logging.Logger;
 import consulo.process.cmd.ParametersList;
+import consulo.project.Project;
 import consulo.util.lang.Couple;
 import consulo.util.lang.Pair;
 import jakarta.annotation.Nonnull;
@@ -39,6 +40,10 @@ import org.jetbrains.plugins.gradle.util.GradleEnvironment;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 
 /**
@@ -69,28 +74,26 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
         @Nullable final GradleExecutionSettings settings,
         @Nonnull final ExternalSystemTaskNotificationListener listener
     ) throws ExternalSystemException, IllegalArgumentException, IllegalStateException {
-        if (settings != null) {
-            myHelper.ensureInstalledWrapper(id, projectPath, settings, listener);
-        }
-
         final GradleProjectResolverExtension projectResolverChain = createProjectResolverChain(settings);
-        final DataNode<ProjectData> resultProjectDataNode =
-            myHelper.execute(
-                projectPath,
-                settings,
-                new ProjectConnectionDataNodeFunction(
-                    id,
-                    projectPath,
-                    settings,
-                    listener,
-                    isPreviewMode,
-                    projectResolverChain,
-                    false
-                )
-            );
+        // the wrapper is installed using the same connection as the main build, see ProjectConnectionDataNodeFunction
+        final ProjectConnectionDataNodeFunction projectFunction = new ProjectConnectionDataNodeFunction(
+            id,
+            projectPath,
+            settings,
+            listener,
+            isPreviewMode,
+            projectResolverChain,
+            false,
+            null
+        );
+        final DataNode<ProjectData> resultProjectDataNode = myHelper.execute(projectPath, settings, projectFunction);
 
         // auto-discover buildSrc project if needed
         final String buildSrcProjectPath = projectPath + "/buildSrc";
+        if (projectFunction.myIncludedBuildPaths.contains(ExternalSystemApiUtil.toCanonicalPath(buildSrcProjectPath))) {
+            // buildSrc models were provided by the main build action (gradle 8.0+)
+            return resultProjectDataNode;
+        }
         handleBuildSrcProject(
             resultProjectDataNode,
             new ProjectConnectionDataNodeFunction(
@@ -100,7 +103,8 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
                 listener,
                 isPreviewMode,
                 projectResolverChain,
-                true
+                true,
+                projectFunction.mySession
             )
         );
         return resultProjectDataNode;
@@ -115,15 +119,23 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
     @Nonnull
     private DataNode<ProjectData> doResolveProjectInfo(
         @Nonnull final ProjectResolverContext resolverCtx,
+        @Nonnull final GradleImportSession session,
         @Nonnull final GradleProjectResolverExtension projectResolverChain,
-        boolean isBuildSrcProject
+        boolean isBuildSrcProject,
+        @Nonnull final Set<String> includedBuildPaths
     ) throws IllegalArgumentException, IllegalStateException {
         final ProjectImportAction projectImportAction = new ProjectImportAction(resolverCtx.isPreviewMode());
+        projectImportAction.setCompactTransport(GradleEnvironment.COMPACT_MODELS_TRANSPORT);
+        if (!resolverCtx.isPreviewMode() && !isBuildSrcProject && !GradleEnvironment.DISABLE_ENHANCED_TOOLING_API) {
+            // resolve included builds (and buildSrc) within the same daemon request
+            projectImportAction.requestIncludedBuilds();
+        }
 
         final List<Pair<String, String>> extraJvmArgs = new ArrayList<>();
         final List<String> commandLineArgs = new ArrayList<>();
 
         final Set<File> toolingExtensionFiles = new HashSet<>();
+        final Set<Class> extraProjectModelClasses = new HashSet<>();
 
         for (GradleProjectResolverExtension resolverExtension = projectResolverChain; resolverExtension != null; resolverExtension =
             resolverExtension.getNext()) {
@@ -132,7 +144,7 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
             // pre-import checks
             resolverExtension.preImportCheck();
             // register classes of extra gradle project models required for extensions (e.g. com.android.builder.model.AndroidProject)
-            projectImportAction.addExtraProjectModelClasses(resolverExtension.getExtraProjectModelClasses());
+            extraProjectModelClasses.addAll(resolverExtension.getExtraProjectModelClasses());
             // collect extra JVM arguments provided by gradle project resolver extensions
             extraJvmArgs.addAll(resolverExtension.getExtraJvmArgs());
             // collect extra command-line arguments
@@ -141,6 +153,19 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
             toolingExtensionFiles.addAll(resolverExtension.getToolingExtensionsFiles());
         }
 
+        projectImportAction.addExtraProjectModelClasses(extraProjectModelClasses);
+
+        // reuse extra models of the modules which build configuration was not changed since the previous import
+        final Project project = resolverCtx.getExternalSystemTaskId().findProject();
+        final GradleImportModelsCache modelsCache =
+            GradleEnvironment.INCREMENTAL_IMPORT && !resolverCtx.isPreviewMode() && !isBuildSrcProject && project != null
+                ? GradleImportModelsCache.getInstance(project)
+                : null;
+        final Set<String> upToDateModulePaths = modelsCache != null
+            ? modelsCache.getUpToDateModulePaths(resolverCtx.getProjectPath(), extraProjectModelClasses)
+            : Collections.emptySet();
+        projectImportAction.addCachedModulePaths(upToDateModulePaths);
+
         final ParametersList parametersList = new ParametersList();
         for (Pair<String, String> jvmArg : extraJvmArgs) {
             parametersList.addProperty(jvmArg.getFirst(), jvmArg.getSecond());
@@ -154,7 +179,7 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
         }
 
         GradleExecutionHelper.prepare(buildActionExecutor, resolverCtx.getExternalSystemTaskId(), resolverCtx.getSettings(),
-            resolverCtx.getListener(), parametersList.getParameters(), commandLineArgs, resolverCtx.getConnection()
+            resolverCtx.getListener(), parametersList.getParameters(), commandLineArgs, session
         );
 
         ProjectImportAction.AllModels allModels;
@@ -181,10 +206,67 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
             allModels = new ProjectImportAction.AllModels(ideaProject);
         }
 
-        final BuildEnvironment buildEnvironment = getBuildEnvironment(resolverCtx);
+        final BuildEnvironment buildEnvironment = session.getBuildEnvironment();
         allModels.setBuildEnvironment(buildEnvironment);
+        if (modelsCache != null) {
+            modelsCache.mergePreviousModels(resolverCtx.getProjectPath(), allModels, upToDateModulePaths);
+        }
         resolverCtx.setModels(allModels);
 
+        ProjectStructure mainProject = createProjectStructure(resolverCtx, projectResolverChain, isBuildSrcProject);
+        DataNode<ProjectData> projectDataNode = mainProject.myProjectDataNode;
+
+        // modules of all the builds are registered before any dependencies are populated, so the dependencies substituted by
+        // included builds are resolved to the modules of these builds
+        List<ProjectStructure> includedBuilds = new ArrayList<>();
+        for (Map.Entry<String, ProjectImportAction.AllModels> entry : allModels.getIncludedBuilds().entrySet()) {
+            ProjectImportAction.AllModels buildModels = entry.getValue();
+            buildModels.setBuildEnvironment(buildEnvironment);
+            String buildPath = ExternalSystemApiUtil.toCanonicalPath(entry.getKey());
+            ProjectStructure includedBuild = createIncludedBuildStructure(resolverCtx, buildPath, buildModels, projectResolverChain);
+            if (includedBuild != null) {
+                includedBuilds.add(includedBuild);
+                includedBuildPaths.add(buildPath);
+            }
+        }
+        if (!allModels.getIncludedBuilds().isEmpty()) {
+            setProjectResolverContext(projectResolverChain, resolverCtx);
+        }
+
+        populateModules(mainProject, projectResolverChain, projectDataNode);
+        for (ProjectStructure includedBuild : includedBuilds) {
+            setProjectResolverContext(projectResolverChain, includedBuild.myResolverCtx);
+            // project libraries of the included build are linked to the main project node directly
+            populateModules(includedBuild, projectResolverChain, projectDataNode);
+            for (DataNode<ModuleData> moduleDataNode : ExternalSystemApiUtil.getChildren(includedBuild.myProjectDataNode, ProjectKeys.MODULE)) {
+                resolverCtx.registerModule(copyNode(moduleDataNode, projectDataNode));
+            }
+        }
+        if (!includedBuilds.isEmpty()) {
+            setProjectResolverContext(projectResolverChain, resolverCtx);
+        }
+
+        // ensure unique library names
+        Collection<DataNode<LibraryData>> libraries = ExternalSystemApiUtil.getChildren(projectDataNode, ProjectKeys.LIBRARY);
+        myLibraryNamesMixer.mixNames(libraries);
+
+        if (modelsCache != null) {
+            modelsCache.update(resolverCtx.getProjectPath(), extraProjectModelClasses, allModels);
+        }
+
+        return projectDataNode;
+    }
+
+    /**
+     * Creates project data node and the module nodes from the models of the given context and registers the modules at the
+     * context. The modules are populated by {@link #populateModules} afterwards.
+     */
+    @Nonnull
+    private static ProjectStructure createProjectStructure(
+        @Nonnull final ProjectResolverContext resolverCtx,
+        @Nonnull final GradleProjectResolverExtension projectResolverChain,
+        boolean isBuildSrcProject
+    ) {
         // import project data
         ProjectData projectData = projectResolverChain.createProject();
         DataNode<ProjectData> projectDataNode = new DataNode<ProjectData>(ProjectKeys.PROJECT, projectData, null);
@@ -201,7 +283,7 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
         if (gradleModules == null || gradleModules.isEmpty()) {
             throw new IllegalStateException("No modules found for the target project: " + ideaProject);
         }
-        final Map<String, Pair<DataNode<ModuleData>, IdeaModule>> moduleMap = new HashMap<>();
+        final Map<String, Pair<DataNode<ModuleData>, IdeaModule>> moduleMap = new LinkedHashMap<>();
 
         // import modules data
         for (IdeaModule gradleModule : gradleModules) {
@@ -231,21 +313,50 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
             }
             DataNode<ModuleData> moduleDataNode = projectDataNode.createChild(ProjectKeys.MODULE, moduleData);
             moduleMap.put(moduleName, Pair.create(moduleDataNode, gradleModule));
+            resolverCtx.registerModule(moduleDataNode);
         }
+        return new ProjectStructure(resolverCtx, projectDataNode, moduleMap.values(), isBuildSrcProject);
+    }
+
+    /**
+     * Populates the modules created by {@link #createProjectStructure}, the chain must be bound to the context of the structure.
+     *
+     * @param librariesProjectDataNode project node which receives the project libraries the modules depend on
+     */
+    private static void populateModules(
+        @Nonnull final ProjectStructure structure,
+        @Nonnull final GradleProjectResolverExtension projectResolverChain,
+        @Nonnull final DataNode<ProjectData> librariesProjectDataNode
+    ) {
+        final DataNode<ProjectData> projectDataNode = structure.myProjectDataNode;
+        final ProjectData projectData = projectDataNode.getData();
+        final boolean isBuildSrcProject = structure.myIsBuildSrcProject;
 
         // populate modules nodes
         final List<TaskData> allTasks = new ArrayList<>();
-        for (final Pair<DataNode<ModuleData>, IdeaModule> pair : moduleMap.values()) {
-            final DataNode<ModuleData> moduleDataNode = pair.first;
-            final IdeaModule ideaModule = pair.second;
-            projectResolverChain.populateModuleExtraModels(ideaModule, moduleDataNode);
-            projectResolverChain.populateModuleContentRoots(ideaModule, moduleDataNode);
-            projectResolverChain.populateModuleCompileOutputSettings(ideaModule, moduleDataNode);
-            projectResolverChain.populateModuleDependencies(ideaModule, moduleDataNode, projectDataNode);
-            if (!isBuildSrcProject) {
-                final Collection<TaskData> moduleTasks =
-                    projectResolverChain.populateModuleTasks(ideaModule, moduleDataNode, projectDataNode);
-                allTasks.addAll(moduleTasks);
+        if (GradleEnvironment.PARALLEL_MODULES_POPULATION && structure.myModules.size() > 1) {
+            populateModulesInParallel(
+                structure.myModules,
+                projectDataNode,
+                librariesProjectDataNode,
+                projectResolverChain,
+                isBuildSrcProject,
+                allTasks
+            );
+        }
+        else {
+            for (final Pair<DataNode<ModuleData>, IdeaModule> pair : structure.myModules) {
+                final DataNode<ModuleData> moduleDataNode = pair.first;
+                final IdeaModule ideaModule = pair.second;
+                projectResolverChain.populateModuleExtraModels(ideaModule, moduleDataNode);
+                projectResolverChain.populateModuleContentRoots(ideaModule, moduleDataNode);
+                projectResolverChain.populateModuleCompileOutputSettings(ideaModule, moduleDataNode);
+                projectResolverChain.populateModuleDependencies(ideaModule, moduleDataNode, librariesProjectDataNode);
+                if (!isBuildSrcProject) {
+                    final Collection<TaskData> moduleTasks =
+                        projectResolverChain.populateModuleTasks(ideaModule, moduleDataNode, projectDataNode);
+                    allTasks.addAll(moduleTasks);
+                }
             }
         }
 
@@ -262,21 +373,145 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
                 new TaskData(GradleConstants.SYSTEM_ID, p.first, projectData.getLinkedExternalProjectPath(), p.second)
             );
         }
+    }
 
-        // ensure unique library names
-        Collection<DataNode<LibraryData>> libraries = ExternalSystemApiUtil.getChildren(projectDataNode, ProjectKeys.LIBRARY);
-        myLibraryNamesMixer.mixNames(libraries);
+    /**
+     * Creates modules of a build included into the main one (composite build or <code>buildSrc</code>) from the models returned
+     * by the main build action. The included build shares the modules and libraries registry with the main build.
+     *
+     * @return <code>null</code> if the build can't be imported into the project because of module names clash
+     */
+    @Nullable
+    private static ProjectStructure createIncludedBuildStructure(
+        @Nonnull final ProjectResolverContext resolverCtx,
+        @Nonnull final String buildPath,
+        @Nonnull final ProjectImportAction.AllModels buildModels,
+        @Nonnull final GradleProjectResolverExtension projectResolverChain
+    ) {
+        for (IdeaModule module : buildModels.getIdeaProject().getModules()) {
+            if (module != null && module.getName() != null && resolverCtx.findModule(module.getName()) != null) {
+                String message = String.format(
+                    "Included build '%s' is not imported: module with the same name (%s) already exists",
+                    buildPath,
+                    module.getName()
+                );
+                LOG.warn(message);
+                resolverCtx.getListener().onTaskOutput(resolverCtx.getExternalSystemTaskId(), message + '\n', false);
+                return null;
+            }
+        }
 
-        return projectDataNode;
+        final ProjectResolverContext buildCtx = new ProjectResolverContext(resolverCtx, buildPath);
+        buildCtx.setModels(buildModels);
+        setProjectResolverContext(projectResolverChain, buildCtx);
+
+        boolean isBuildSrcProject = buildPath.equals(ExternalSystemApiUtil.toCanonicalPath(resolverCtx.getProjectPath() + "/buildSrc"));
+        return createProjectStructure(buildCtx, projectResolverChain, isBuildSrcProject);
     }
 
-    @Nullable
-    private static BuildEnvironment getBuildEnvironment(@Nonnull ProjectResolverContext resolverCtx) {
+    @Nonnull
+    private static <T> DataNode<T> copyNode(@Nonnull DataNode<T> node, @Nonnull DataNode<?> newParent) {
+        DataNode<T> copy = newParent.createChild(node.getKey(), node.getData());
+        for (DataNode<?> child : node.getChildren()) {
+            copyNode(child, copy);
+        }
+        return copy;
+    }
+
+    private static void setProjectResolverContext(
+        @Nonnull GradleProjectResolverExtension projectResolverChain,
+        @Nonnull ProjectResolverContext resolverCtx
+    ) {
+        for (GradleProjectResolverExtension resolverExtension = projectResolverChain; resolverExtension != null; resolverExtension =
+            resolverExtension.getNext()) {
+            resolverExtension.setProjectResolverContext(resolverCtx);
+        }
+    }
+
+    /**
+     * Populates module nodes concurrently. Only the stages which touch nothing but their own module node run in parallel,
+     * compile output settings and dependencies modify the project node (project libraries, external project) and are populated
+     * afterwards in the module order, so the resulting tree does not depend on the threads scheduling.
+     */
+    private static void populateModulesInParallel(
+        @Nonnull Collection<Pair<DataNode<ModuleData>, IdeaModule>> modules,
+        @Nonnull DataNode<ProjectData> projectDataNode,
+        @Nonnull DataNode<ProjectData> librariesProjectDataNode,
+        @Nonnull GradleProjectResolverExtension projectResolverChain,
+        boolean isBuildSrcProject,
+        @Nonnull List<TaskData> allTasks
+    ) {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), modules.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Gradle modules population");
+            thread.setDaemon(true);
+            return thread;
+        });
         try {
-            return resolverCtx.getConnection().getModel(BuildEnvironment.class);
+            List<Future<Collection<TaskData>>> futures = new ArrayList<>(modules.size());
+            for (final Pair<DataNode<ModuleData>, IdeaModule> pair : modules) {
+                futures.add(executor.submit(() -> {
+                    final DataNode<ModuleData> moduleDataNode = pair.first;
+                    final IdeaModule ideaModule = pair.second;
+                    projectResolverChain.populateModuleExtraModels(ideaModule, moduleDataNode);
+                    projectResolverChain.populateModuleContentRoots(ideaModule, moduleDataNode);
+                    if (isBuildSrcProject) {
+                        return Collections.<TaskData>emptyList();
+                    }
+                    return projectResolverChain.populateModuleTasks(ideaModule, moduleDataNode, projectDataNode);
+                }));
+            }
+
+            for (Future<Collection<TaskData>> future : futures) {
+                allTasks.addAll(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            executor.shutdownNow();
         }
-        catch (Exception e) {
-            return null;
+
+        for (final Pair<DataNode<ModuleData>, IdeaModule> pair : modules) {
+            projectResolverChain.populateModuleCompileOutputSettings(pair.second, pair.first);
+            projectResolverChain.populateModuleDependencies(pair.second, pair.first, librariesProjectDataNode);
+        }
+    }
+
+    /**
+     * Project node of a build with the created but not yet populated modules.
+     */
+    private static class ProjectStructure {
+        @Nonnull
+        private final ProjectResolverContext myResolverCtx;
+        @Nonnull
+        private final DataNode<ProjectData> myProjectDataNode;
+        @Nonnull
+        private final Collection<Pair<DataNode<ModuleData>, IdeaModule>> myModules;
+        private final boolean myIsBuildSrcProject;
+
+        private ProjectStructure(
+            @Nonnull ProjectResolverContext resolverCtx,
+            @Nonnull DataNode<ProjectData> projectDataNode,
+            @Nonnull Collection<Pair<DataNode<ModuleData>, IdeaModule>> modules,
+            boolean isBuildSrcProject
+        ) {
+            myResolverCtx = resolverCtx;
+            myProjectDataNode = projectDataNode;
+            myModules = modules;
+            myIsBuildSrcProject = isBuildSrcProject;
         }
     }
 
@@ -336,6 +571,14 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
         @Nonnull
         private final GradleProjectResolverExtension myProjectResolverChain;
         private final boolean myIsBuildSrcProject;
+        @Nullable
+        private final GradleImportSession myParentSession;
+        @Nullable
+        private GradleImportSession mySession;
+        /**
+         * Canonical paths of the included builds resolved together with the project.
+         */
+        private final Set<String> myIncludedBuildPaths = new HashSet<>();
 
         public ProjectConnectionDataNodeFunction(
             @Nonnull ExternalSystemTaskId id,
@@ -344,7 +587,8 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
             @Nonnull ExternalSystemTaskNotificationListener listener,
             boolean isPreviewMode,
             @Nonnull GradleProjectResolverExtension projectResolverChain,
-            boolean isBuildSrcProject
+            boolean isBuildSrcProject,
+            @Nullable GradleImportSession parentSession
         ) {
             myId = id;
             myProjectPath = projectPath;
@@ -353,10 +597,18 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
             myIsPreviewMode = isPreviewMode;
             myProjectResolverChain = projectResolverChain;
             myIsBuildSrcProject = isBuildSrcProject;
+            myParentSession = parentSession;
         }
 
         @Override
         public DataNode<ProjectData> apply(ProjectConnection connection) {
+            final GradleImportSession session =
+                myParentSession != null ? myParentSession.withConnection(connection) : new GradleImportSession(connection);
+            mySession = session;
+            if (!myIsBuildSrcProject && mySettings != null) {
+                myHelper.ensureInstalledWrapper(myId, myProjectPath, mySettings, myListener, session);
+            }
+
             try {
                 return doResolveProjectInfo(
                     new ProjectResolverContext(
@@ -367,8 +619,10 @@ public class GradleProjectResolver implements ExternalSystemProjectResolver<Grad
                         myListener,
                         myIsPreviewMode
                     ),
+                    session,
                     myProjectResolverChain,
-                    myIsBuildSrcProject
+                    myIsBuildSrcProject,
+                    myIncludedBuildPaths
                 );
             }
             catch (RuntimeException e) {
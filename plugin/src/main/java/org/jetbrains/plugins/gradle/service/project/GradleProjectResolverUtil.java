@@ -4,27 +4,30 @@ import consulo.externalSystem.model.DataNode;
 import consulo.externalSystem.model.ProjectKeys;
 import consulo.externalSystem.model.project.LibraryData;
 import consulo.externalSystem.service.project.ProjectData;
-import consulo.externalSystem.util.ExternalSystemApiUtil;
+import consulo.gradle.service.project.ProjectResolverContext;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
 public class GradleProjectResolverUtil {
-    public static boolean linkProjectLibrary(@Nullable DataNode<ProjectData> ideProject, @Nonnull final LibraryData library) {
-        if (ideProject == null) {
-            return false;
-        }
-
-        String libraryName = library.getExternalName();
-        DataNode<LibraryData> libraryData = ExternalSystemApiUtil.find(
-            ideProject,
-            ProjectKeys.LIBRARY,
-            node -> libraryName.equals(node.getData().getExternalName())
-        );
+    /**
+     * Adds the library to the project unless a library with the same name is already there, the project libraries are looked up
+     * through the library index of the given resolver context.
+     *
+     * @return project library instance to reference from the module, <code>null</code> if another library with the same name
+     * is already registered at the project
+     */
+    @Nullable
+    public static LibraryData linkProjectLibrary(
+        @Nonnull ProjectResolverContext resolverCtx,
+        @Nonnull DataNode<ProjectData> ideProject,
+        @Nonnull LibraryData library
+    ) {
+        DataNode<LibraryData> libraryData = resolverCtx.findLibrary(library.getExternalName());
         if (libraryData == null) {
-            ideProject.createChild(ProjectKeys.LIBRARY, library);
-            return true;
+            resolverCtx.registerLibrary(ideProject.createChild(ProjectKeys.LIBRARY, library));
+            return library;
         }
-        return libraryData.getData().equals(library);
+        return libraryData.getData().equals(library) ? libraryData.getData() : null;
     }
 }
@@ -100,6 +100,14 @@ public class BuildClasspathModuleGradleDataService implements ProjectDataService
             return gradleSdkLibraries;
         });
 
+        // equal classpath lists of different modules are stored once
+        Map<List<String>, List<String>> classpathSets = new HashMap<>();
+        for (ExternalProjectBuildClasspathPojo projectBuildClasspathPojo : localSettings.getProjectBuildClasspath().values()) {
+            for (ExternalModuleBuildClasspathPojo moduleBuildClasspathPojo : projectBuildClasspathPojo.getModulesBuildClasspath().values()) {
+                classpathSets.putIfAbsent(moduleBuildClasspathPojo.getEntries(), moduleBuildClasspathPojo.getEntries());
+            }
+        }
+
         for (final DataNode<BuildScriptClasspathData> node : toImport) {
             if (GradleConstants.SYSTEM_ID.equals(node.getData().getOwner())) {
                 DataNode<ProjectData> projectDataNode = ExternalSystemApiUtil.findParent(node, ProjectKeys.PROJECT);
@@ -150,7 +158,7 @@ public class BuildClasspathModuleGradleDataService implements ProjectDataService
                 projectBuildClasspathPojo.setProjectBuildClasspath(projectBuildClasspath);
                 projectBuildClasspathPojo.getModulesBuildClasspath().put(
                     externalModulePath,
-                    new ExternalModuleBuildClasspathPojo(externalModulePath, new ArrayList<>(buildClasspath))
+                    new ExternalModuleBuildClasspathPojo(externalModulePath, getSharedClasspath(classpathSets, buildClasspath))
                 );
             }
         }
@@ -158,6 +166,17 @@ public class BuildClasspathModuleGradleDataService implements ProjectDataService
         GradleBuildClasspathManager.getInstance(project).reload();
     }
 
+    @Nonnull
+    private static List<String> getSharedClasspath(@Nonnull Map<List<String>, List<String>> classpathSets, @Nonnull Set<String> buildClasspath) {
+        List<String> classpath = new ArrayList<>(buildClasspath);
+        List<String> sharedClasspath = classpathSets.get(classpath);
+        if (sharedClasspath == null) {
+            sharedClasspath = Collections.unmodifiableList(classpath);
+            classpathSets.put(classpath, sharedClasspath);
+        }
+        return sharedClasspath;
+    }
+
     @Override
     public void removeData(@Nonnull Collection<? extends Module> toRemove, @Nonnull Project project, boolean synchronous) {
     }
@@ -72,12 +72,15 @@ public class ExternalProjectDataService implements ProjectDataService<ExternalPr
     @Nonnull
     private final Map<Pair<ProjectSystemId, File>, ExternalProject> myExternalRootProjects;
 
+    @Nonnull
+    private final ExternalProjectSerializer mySerializer = new ExternalProjectSerializer();
+
     @Nonnull
     private ProjectDataManager myProjectDataManager;
 
     public ExternalProjectDataService(@Nonnull ProjectDataManager projectDataManager) {
         myProjectDataManager = projectDataManager;
-        myExternalRootProjects = ConcurrentFactoryMap.createMap(key -> new ExternalProjectSerializer().load(key.first, key.second));
+        myExternalRootProjects = ConcurrentFactoryMap.createMap(key -> mySerializer.load(key.first, key.second));
     }
 
     @Nonnull
@@ -233,7 +236,7 @@ public class ExternalProjectDataService implements ProjectDataService<ExternalPr
             value
         );
 
-        new ExternalProjectSerializer().save(value);
+        mySerializer.save(value);
     }
 
     @Nullable
@@ -17,170 +17,122 @@ package org.jetbrains.plugins.gradle.service.project.data;
 
 import consulo.container.boot.ContainerPathManager;
 import consulo.externalSystem.model.ProjectSystemId;
-import consulo.externalSystem.rt.model.ExternalProject;
+import consulo.externalSystem.rt.model.*;
 import consulo.logging.Logger;
+import consulo.util.io.FileUtil;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
-import java.io.File;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
 
 /**
+ * Stores imported {@link ExternalProject} trees under the plugin system dir, so they survive IDE restarts
+ * without a new gradle import.
+ * <p/>
+ * File layout: magic, format version, payload length, CRC32 of the payload, payload. All strings of the payload
+ * (names, paths, patterns) are written once and then referenced by index.
+ *
  * @author Vladislav.Soroka
  * @since 2014-07-15
  */
 public class ExternalProjectSerializer {
     private static final Logger LOG = Logger.getInstance(ExternalProjectSerializer.class);
 
-//    private final Kryo myKryo;
-
-    public ExternalProjectSerializer() {
-//        myKryo = new Kryo() {
-//            @Override
-//            public <T> T newInstance(Class<T> type) {
-//                LOG.error("Serializing default type: " + type);
-//                return super.newInstance(type);
-//            }
-//        };
-//        configureKryo();
-    }
-//
-//    private void configureKryo() {
-//        myKryo.setAutoReset(true);
-//
-//        myKryo.setRegistrationRequired(true);
-//        Log.set(Log.LEVEL_WARN);
-//
-//        myKryo.register(ArrayList.class, new CollectionSerializer() {
-//            @Override
-//            protected Collection create(Kryo kryo, Input input, Class<Collection> type) {
-//                return new ArrayList();
-//            }
-//        });
-//        myKryo.register(HashMap.class, new MapSerializer() {
-//            @Override
-//            protected Map create(Kryo kryo, Input input, Class<Map> type) {
-//                return new HashMap();
-//            }
-//        });
-//        myKryo.register(HashSet.class, new CollectionSerializer() {
-//            @Override
-//            protected Collection create(Kryo kryo, Input input, Class<Collection> type) {
-//                return new HashSet();
-//            }
-//        });
-//
-//        myKryo.register(File.class, new FileSerializer());
-//        myKryo.register(DefaultExternalProject.class, new FieldSerializer<DefaultExternalProject>(myKryo, DefaultExternalProject.class) {
-//            @Override
-//            protected DefaultExternalProject create(Kryo kryo, Input input, Class<DefaultExternalProject> type) {
-//                return new DefaultExternalProject();
-//            }
-//        });
-//
-//        myKryo.register(DefaultExternalTask.class, new FieldSerializer<DefaultExternalTask>(myKryo, DefaultExternalTask.class) {
-//            @Override
-//            protected DefaultExternalTask create(Kryo kryo, Input input, Class<DefaultExternalTask> type) {
-//                return new DefaultExternalTask();
-//            }
-//        });
-//
-//        myKryo.register(DefaultExternalPlugin.class, new FieldSerializer<DefaultExternalPlugin>(myKryo, DefaultExternalPlugin.class) {
-//            @Override
-//            protected DefaultExternalPlugin create(Kryo kryo, Input input, Class<DefaultExternalPlugin> type) {
-//                return new DefaultExternalPlugin();
-//            }
-//        });
-//
-//        myKryo.register(
-//            DefaultExternalSourceSet.class,
-//            new FieldSerializer<DefaultExternalSourceSet>(myKryo, DefaultExternalSourceSet.class) {
-//                @Override
-//                protected DefaultExternalSourceSet create(Kryo kryo, Input input, Class<DefaultExternalSourceSet> type) {
-//                    return new DefaultExternalSourceSet();
-//                }
-//            }
-//        );
-//
-//        myKryo.register(
-//            DefaultExternalSourceDirectorySet.class,
-//            new FieldSerializer<DefaultExternalSourceDirectorySet>(myKryo, DefaultExternalSourceDirectorySet.class) {
-//                @Override
-//                protected DefaultExternalSourceDirectorySet create(Kryo kryo, Input input, Class<DefaultExternalSourceDirectorySet> type) {
-//                    return new DefaultExternalSourceDirectorySet();
-//                }
-//            }
-//        );
-//
-//        myKryo.register(DefaultExternalFilter.class, new FieldSerializer<DefaultExternalFilter>(myKryo, DefaultExternalFilter.class) {
-//            @Override
-//            protected DefaultExternalFilter create(Kryo kryo, Input input, Class<DefaultExternalFilter> type) {
-//                return new DefaultExternalFilter();
-//            }
-//        });
-//
-//        myKryo.register(ExternalSystemSourceType.class, new DefaultSerializers.EnumSerializer(ExternalSystemSourceType.class));
-//
-//        myKryo.register(LinkedHashSet.class, new CollectionSerializer() {
-//            @Override
-//            protected Collection create(Kryo kryo, Input input, Class<Collection> type) {
-//                return new LinkedHashSet();
-//            }
-//        });
-//        myKryo.register(HashSet.class, new CollectionSerializer() {
-//            @Override
-//            protected Collection create(Kryo kryo, Input input, Class<Collection> type) {
-//                return new HashSet();
-//            }
-//        });
-//        myKryo.register(Set.class, new CollectionSerializer() {
-//            @Override
-//            protected Collection create(Kryo kryo, Input input, Class<Collection> type) {
-//                return new HashSet();
-//            }
-//        });
-//    }
+    private static final int MAGIC = 0x45505331; // "EPS1"
+    /**
+     * Must be increased on every change of the payload layout, older snapshots are discarded then.
+     */
+    private static final int FORMAT_VERSION = 1;
 
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
 
     public void save(@Nonnull ExternalProject externalProject) {
-//        Output output = null;
-//        try {
-//            final String externalProjectPath = externalProject.getProjectDir().getPath();
-//            final File configurationFile =
-//                getProjectConfigurationFile(new ProjectSystemId(externalProject.getExternalSystemId()), externalProjectPath);
-//            if (!FileUtil.createParentDirs(configurationFile)) {
-//                return;
-//            }
-//
-//            output = new Output(new FileOutputStream(configurationFile));
-//            myKryo.writeObject(output, externalProject);
-//        }
-//        catch (FileNotFoundException e) {
-//            LOG.error(e);
-//        }
-//        finally {
-//            StreamUtil.closeStream(output);
-//        }
+        final File projectDir = externalProject.getProjectDir();
+        final File configurationFile =
+            getProjectConfigurationFile(new ProjectSystemId(externalProject.getExternalSystemId()), projectDir.getPath());
+        if (!FileUtil.createParentDirs(configurationFile)) {
+            return;
+        }
+
+        File tempFile = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                SnapshotWriter writer = new SnapshotWriter(out);
+                writer.writeString(projectDir.getPath());
+                writer.writeProject(externalProject);
+            }
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            tempFile = new File(configurationFile.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(payload.length);
+                out.writeLong(crc.getValue());
+                out.write(payload);
+            }
+            Files.move(tempFile.toPath(), configurationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            LOG.warn("Unable to save external project snapshot: " + configurationFile, e);
+            if (tempFile != null) {
+                FileUtil.delete(tempFile);
+            }
+        }
     }
 
     @Nullable
     public ExternalProject load(@Nonnull ProjectSystemId externalSystemId, File externalProjectPath) {
-//        Input input = null;
-//        try {
-//            final File configurationFile = getProjectConfigurationFile(externalSystemId, externalProjectPath.getPath());
-//            if (!configurationFile.isFile()) {
-//                return null;
-//            }
-//
-//            input = new Input(new FileInputStream(configurationFile));
-//            return myKryo.readObject(input, DefaultExternalProject.class);
-//        }
-//        catch (Exception e) {
-//            LOG.error(e);
-//        }
-//        finally {
-//            StreamUtil.closeStream(input);
-//        }
+        final File configurationFile = getProjectConfigurationFile(externalSystemId, externalProjectPath.getPath());
+        if (!configurationFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(configurationFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOG.info("Discarding external project snapshot of unsupported format: " + configurationFile);
+                return discard(configurationFile);
+            }
+
+            int length = in.readInt();
+            long checksum = in.readLong();
+            if (length < 0 || length > configurationFile.length()) {
+                return discard(configurationFile);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (crc.getValue() != checksum) {
+                LOG.warn("Discarding corrupted external project snapshot: " + configurationFile);
+                return discard(configurationFile);
+            }
 
+            SnapshotReader reader = new SnapshotReader(new DataInputStream(new ByteArrayInputStream(payload)));
+            // different paths may share the same file because of hash collisions
+            if (!externalProjectPath.getPath().equals(reader.readString())) {
+                return null;
+            }
+            return reader.readProject();
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to load external project snapshot: " + configurationFile, e);
+            return discard(configurationFile);
+        }
+    }
+
+    @Nullable
+    private static ExternalProject discard(@Nonnull File configurationFile) {
+        FileUtil.delete(configurationFile);
         return null;
     }
 
@@ -202,44 +154,273 @@ public class ExternalProjectSerializer {
         ).getAbsoluteFile();
     }
 
-//    private static class FileSerializer extends Serializer<File> {
-//        private final Kryo myStdKryo;
-//
-//        public FileSerializer() {
-//            myStdKryo = new Kryo();
-//            myStdKryo.register(File.class);
-//            myStdKryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-//        }
-//
-//        @Override
-//        public void write(Kryo kryo, Output output, File object) {
-//            myStdKryo.writeObject(output, object);
-//        }
-//
-//        @Override
-//        public File read(Kryo kryo, Input input, Class<File> type) {
-//            File file = myStdKryo.readObject(input, File.class);
-//            return new File(file.getPath());
-//        }
-//    }
-
-//  private static class StdSerializer<T> extends Serializer<T> {
-//    private final Kryo myStdKryo;
-//
-//    public StdSerializer(Class<T> clazz) {
-//      myStdKryo = new Kryo();
-//      myStdKryo.register(clazz);
-//      myStdKryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
-//    }
-//
-//    @Override
-//    public void write(Kryo kryo, Output output, T object) {
-//      myStdKryo.writeObject(output, object);
-//    }
-//
-//    @Override
-//    public T read(Kryo kryo, Input input, Class<T> type) {
-//      return myStdKryo.readObject(input, type);
-//    }
-//  }
+    private static class SnapshotWriter {
+        private final DataOutputStream myOut;
+        private final Map<String, Integer> myStrings = new HashMap<>();
+
+        SnapshotWriter(DataOutputStream out) {
+            myOut = out;
+        }
+
+        void writeProject(ExternalProject project) throws IOException {
+            writeString(project.getExternalSystemId());
+            writeString(project.getName());
+            writeString(project.getQName());
+            writeString(project.getDescription());
+            writeString(project.getGroup());
+            writeString(project.getVersion());
+            writeFile(project.getProjectDir());
+            writeFile(project.getBuildDir());
+            writeFile(project.getBuildFile());
+
+            Map<String, ExternalTask> tasks = project.getTasks();
+            writeVarInt(tasks.size());
+            for (ExternalTask task : tasks.values()) {
+                writeString(task.getName());
+                writeString(task.getQName());
+                writeString(task.getDescription());
+                writeString(task.getGroup());
+            }
+
+            Map<String, ExternalPlugin> plugins = project.getPlugins();
+            writeVarInt(plugins.size());
+            for (ExternalPlugin plugin : plugins.values()) {
+                writeString(plugin.getId());
+            }
+
+            Map<String, ExternalSourceSet> sourceSets = project.getSourceSets();
+            writeVarInt(sourceSets.size());
+            for (ExternalSourceSet sourceSet : sourceSets.values()) {
+                writeSourceSet(sourceSet);
+            }
+
+            Map<String, ExternalProject> childProjects = project.getChildProjects();
+            writeVarInt(childProjects.size());
+            for (Map.Entry<String, ExternalProject> entry : childProjects.entrySet()) {
+                writeString(entry.getKey());
+                writeProject(entry.getValue());
+            }
+        }
+
+        private void writeSourceSet(ExternalSourceSet sourceSet) throws IOException {
+            writeString(sourceSet.getName());
+
+            List<Map.Entry<IExternalSystemSourceType, ExternalSourceDirectorySet>> sources = new ArrayList<>();
+            for (Map.Entry<IExternalSystemSourceType, ExternalSourceDirectorySet> entry : sourceSet.getSources().entrySet()) {
+                // only the builtin source types are produced by the gradle model builders
+                if (entry.getKey() instanceof ExternalSystemSourceType) {
+                    sources.add(entry);
+                }
+            }
+
+            writeVarInt(sources.size());
+            for (Map.Entry<IExternalSystemSourceType, ExternalSourceDirectorySet> entry : sources) {
+                writeString(((ExternalSystemSourceType)entry.getKey()).name());
+
+                ExternalSourceDirectorySet directorySet = entry.getValue();
+                writeString(directorySet.getName());
+                writeFile(directorySet.getOutputDir());
+                writeFiles(directorySet.getSrcDirs());
+                writeStrings(directorySet.getIncludes());
+                writeStrings(directorySet.getExcludes());
+
+                List<? extends ExternalFilter> filters = directorySet.getFilters();
+                writeVarInt(filters.size());
+                for (ExternalFilter filter : filters) {
+                    writeString(filter.getFilterType());
+                    writeString(filter.getPropertiesAsJsonMap());
+                }
+            }
+        }
+
+        private void writeFiles(Collection<File> files) throws IOException {
+            writeVarInt(files.size());
+            for (File file : files) {
+                writeFile(file);
+            }
+        }
+
+        private void writeStrings(Collection<String> strings) throws IOException {
+            writeVarInt(strings.size());
+            for (String string : strings) {
+                writeString(string);
+            }
+        }
+
+        private void writeFile(@Nullable File file) throws IOException {
+            writeString(file == null ? null : file.getPath());
+        }
+
+        void writeString(@Nullable String value) throws IOException {
+            if (value == null) {
+                writeVarInt(NULL_STRING);
+                return;
+            }
+
+            Integer index = myStrings.get(value);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+
+            myStrings.put(value, myStrings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(NEW_STRING);
+            writeVarInt(bytes.length);
+            myOut.write(bytes);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                myOut.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            myOut.writeByte(value);
+        }
+    }
+
+    private static class SnapshotReader {
+        private final DataInputStream myIn;
+        private final List<String> myStrings = new ArrayList<>();
+
+        SnapshotReader(DataInputStream in) {
+            myIn = in;
+        }
+
+        DefaultExternalProject readProject() throws IOException {
+            DefaultExternalProject project = new DefaultExternalProject();
+            project.setExternalSystemId(readString());
+            project.setName(readString());
+            project.setQName(readString());
+            project.setDescription(readString());
+            project.setGroup(readString());
+            project.setVersion(readString());
+            project.setProjectDir(readFile());
+            project.setBuildDir(readFile());
+            project.setBuildFile(readFile());
+
+            int tasksCount = readVarInt();
+            Map<String, ExternalTask> tasks = new HashMap<>(tasksCount);
+            for (int i = 0; i < tasksCount; i++) {
+                DefaultExternalTask task = new DefaultExternalTask();
+                task.setName(readString());
+                task.setQName(readString());
+                task.setDescription(readString());
+                task.setGroup(readString());
+                tasks.put(task.getQName(), task);
+            }
+            project.setTasks(tasks);
+
+            int pluginsCount = readVarInt();
+            Map<String, ExternalPlugin> plugins = new HashMap<>(pluginsCount);
+            for (int i = 0; i < pluginsCount; i++) {
+                DefaultExternalPlugin plugin = new DefaultExternalPlugin();
+                plugin.setId(readString());
+                plugins.put(plugin.getId(), plugin);
+            }
+            project.setPlugins(plugins);
+
+            int sourceSetsCount = readVarInt();
+            Map<String, ExternalSourceSet> sourceSets = new HashMap<>(sourceSetsCount);
+            for (int i = 0; i < sourceSetsCount; i++) {
+                ExternalSourceSet sourceSet = readSourceSet();
+                sourceSets.put(sourceSet.getName(), sourceSet);
+            }
+            project.setSourceSets(sourceSets);
+
+            int childrenCount = readVarInt();
+            Map<String, ExternalProject> childProjects = new HashMap<>(childrenCount);
+            for (int i = 0; i < childrenCount; i++) {
+                String key = readString();
+                childProjects.put(key, readProject());
+            }
+            project.setChildProjects(childProjects);
+            return project;
+        }
+
+        private ExternalSourceSet readSourceSet() throws IOException {
+            DefaultExternalSourceSet sourceSet = new DefaultExternalSourceSet();
+            sourceSet.setName(readString());
+
+            int sourcesCount = readVarInt();
+            Map<IExternalSystemSourceType, ExternalSourceDirectorySet> sources = new HashMap<>(sourcesCount);
+            for (int i = 0; i < sourcesCount; i++) {
+                ExternalSystemSourceType type = ExternalSystemSourceType.valueOf(readString());
+
+                DefaultExternalSourceDirectorySet directorySet = new DefaultExternalSourceDirectorySet();
+                directorySet.setName(readString());
+                directorySet.setOutputDir(readFile());
+                directorySet.setSrcDirs(readFiles());
+                directorySet.setIncludes(readStrings());
+                directorySet.setExcludes(readStrings());
+
+                int filtersCount = readVarInt();
+                List<ExternalFilter> filters = new ArrayList<>(filtersCount);
+                for (int j = 0; j < filtersCount; j++) {
+                    DefaultExternalFilter filter = new DefaultExternalFilter();
+                    filter.setFilterType(readString());
+                    filter.setPropertiesAsJsonMap(readString());
+                    filters.add(filter);
+                }
+                directorySet.setFilters(filters);
+
+                sources.put(type, directorySet);
+            }
+            sourceSet.setSources(sources);
+            return sourceSet;
+        }
+
+        private Set<File> readFiles() throws IOException {
+            int count = readVarInt();
+            Set<File> files = new LinkedHashSet<>(count);
+            for (int i = 0; i < count; i++) {
+                files.add(readFile());
+            }
+            return files;
+        }
+
+        private Set<String> readStrings() throws IOException {
+            int count = readVarInt();
+            Set<String> strings = new LinkedHashSet<>(count);
+            for (int i = 0; i < count; i++) {
+                strings.add(readString());
+            }
+            return strings;
+        }
+
+        @Nullable
+        private File readFile() throws IOException {
+            String path = readString();
+            return path == null ? null : new File(path);
+        }
+
+        @Nullable
+        String readString() throws IOException {
+            int marker = readVarInt();
+            if (marker == NULL_STRING) {
+                return null;
+            }
+            if (marker != NEW_STRING) {
+                return myStrings.get(marker - 2);
+            }
+
+            byte[] bytes = new byte[readVarInt()];
+            myIn.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            myStrings.add(value);
+            return value;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = myIn.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
 }
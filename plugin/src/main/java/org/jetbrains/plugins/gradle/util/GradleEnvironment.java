@@ -9,6 +9,10 @@ public class GradleEnvironment {
     @Deprecated
     public static final boolean DISABLE_ENHANCED_TOOLING_API = Boolean.getBoolean("gradle.disable.enhanced.tooling.api");
     public static final boolean ADJUST_USER_DIR = Boolean.getBoolean("gradle.adjust.userdir");
+    public static final boolean INCREMENTAL_IMPORT = Boolean.getBoolean("gradle.incremental.import");
+    public static final boolean PARALLEL_MODULES_POPULATION = Boolean.getBoolean("gradle.parallel.modules.population");
+    public static final boolean COMPACT_MODELS_TRANSPORT = Boolean.getBoolean("gradle.compact.models.transport");
+    public static final boolean POOL_CONNECTIONS = Boolean.getBoolean("gradle.pool.connections");
 
     private GradleEnvironment() {
     }
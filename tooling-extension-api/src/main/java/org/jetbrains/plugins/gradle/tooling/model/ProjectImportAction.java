@@ -17,11 +17,19 @@ package org.jetbrains.plugins.gradle.tooling.model;
 
 import org.gradle.tooling.BuildAction;
 import org.gradle.tooling.BuildController;
+import org.gradle.tooling.model.Model;
+import org.gradle.tooling.model.UnsupportedMethodException;
 import org.gradle.tooling.model.build.BuildEnvironment;
+import org.gradle.tooling.model.gradle.GradleBuild;
 import org.gradle.tooling.model.idea.BasicIdeaProject;
 import org.gradle.tooling.model.idea.IdeaModule;
 import org.gradle.tooling.model.idea.IdeaProject;
+import org.jetbrains.plugins.gradle.tooling.serialization.CompactModelsCodec;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 
@@ -33,7 +41,10 @@ public class ProjectImportAction implements BuildAction<ProjectImportAction.AllM
     private static final long serialVersionUID = 257773272670650022L;
 
     private final Set<Class> myExtraProjectModelClasses = new HashSet<Class>();
+    private final Set<String> myCachedModulePaths = new HashSet<String>();
     private final boolean myIsPreviewMode;
+    private boolean myIncludedBuildsRequested;
+    private boolean myCompactTransport;
 
     public ProjectImportAction(boolean isPreviewMode) {
         myIsPreviewMode = isPreviewMode;
@@ -43,6 +54,31 @@ public class ProjectImportAction implements BuildAction<ProjectImportAction.AllM
         myExtraProjectModelClasses.addAll(projectModelClasses);
     }
 
+    /**
+     * Extra models of the given gradle projects are not requested, the IDE side reuses them from the previous import.
+     *
+     * @param modulePaths gradle paths of the projects, e.g. ':app'
+     */
+    public void addCachedModulePaths(Set<String> modulePaths) {
+        myCachedModulePaths.addAll(modulePaths);
+    }
+
+    /**
+     * Models of the builds included into the imported one (composite builds and, since gradle 8.0, <code>buildSrc</code>) are
+     * requested by the same action, see {@link AllModels#getIncludedBuilds()}.
+     */
+    public void requestIncludedBuilds() {
+        myIncludedBuildsRequested = true;
+    }
+
+    /**
+     * Extra models supported by {@link CompactModelsCodec} are sent to the IDE in the compact encoding instead of the default
+     * java serialization.
+     */
+    public void setCompactTransport(boolean compactTransport) {
+        myCompactTransport = compactTransport;
+    }
+
     @Override
     public AllModels execute(final BuildController controller) {
         //outer conditional is needed to be compatible with 1.8
@@ -52,26 +88,71 @@ public class ProjectImportAction implements BuildAction<ProjectImportAction.AllM
         }
 
         AllModels allModels = new AllModels(ideaProject);
+        allModels.setCompactTransport(myCompactTransport);
 
         // TODO ask gradle guys why there is always null got for BuildEnvironment model
         //allModels.setBuildEnvironment(controller.findModel(BuildEnvironment.class));
 
-        addExtraProject(controller, allModels, null);
+        addExtraProject(controller, allModels, null, null);
         for (IdeaModule module : ideaProject.getModules()) {
-            addExtraProject(controller, allModels, module);
+            String projectPath = module.getGradleProject().getPath();
+            if (myCachedModulePaths.contains(projectPath)) {
+                continue;
+            }
+            addExtraProject(controller, allModels, module, projectPath);
         }
 
+        if (myIncludedBuildsRequested) {
+            addIncludedBuilds(controller, allModels);
+        }
         return allModels;
     }
 
-    private void addExtraProject(BuildController controller, AllModels allModels, IdeaModule model) {
+    private void addIncludedBuilds(BuildController controller, AllModels allModels) {
+        GradleBuild mainBuild = controller.getBuildModel();
+        Collection<? extends GradleBuild> builds;
+        try {
+            builds = mainBuild.getEditableBuilds();
+        }
+        catch (UnsupportedMethodException e) {
+            // gradle versions prior to 4.10, included builds are not supported
+            return;
+        }
+
+        File mainRootDir = mainBuild.getBuildIdentifier().getRootDir();
+        for (GradleBuild build : builds) {
+            File rootDir = build.getBuildIdentifier().getRootDir();
+            if (rootDir.equals(mainRootDir) || allModels.getIncludedBuild(rootDir.getPath()) != null) {
+                continue;
+            }
+
+            IdeaProject ideaProject = controller.findModel(build, IdeaProject.class);
+            if (ideaProject == null || ideaProject.getModules().isEmpty()) {
+                continue;
+            }
+
+            AllModels buildModels = new AllModels(ideaProject);
+            buildModels.setCompactTransport(myCompactTransport);
+            addExtraProject(controller, buildModels, build, null);
+            for (IdeaModule module : ideaProject.getModules()) {
+                addExtraProject(controller, buildModels, module, module.getGradleProject().getPath());
+            }
+            allModels.addIncludedBuild(rootDir.getPath(), buildModels);
+        }
+    }
+
+    /**
+     * @param target model which identifies the gradle project or build to request the models for, <code>null</code> for the main build
+     * @param projectPath gradle path of the project to store the models for, <code>null</code> for the root models
+     */
+    private void addExtraProject(BuildController controller, AllModels allModels, Model target, String projectPath) {
         for (Class aClass : myExtraProjectModelClasses) {
             try {
-                Object extraProject = controller.findModel(model, aClass);
+                Object extraProject = controller.findModel(target, aClass);
                 if (extraProject == null) {
                     continue;
                 }
-                allModels.addExtraProject(extraProject, aClass, model);
+                allModels.addExtraProject(extraProject, aClass, projectPath);
             }
             catch (Exception e) {
                 // do not fail project import in a preview mode
@@ -85,10 +166,13 @@ public class ProjectImportAction implements BuildAction<ProjectImportAction.AllM
     public static class AllModels implements Serializable {
         private static final long serialVersionUID = -5856781288747689870L;
 
-        private final Map<String, Object> projectsByPath = new HashMap<String, Object>();
+        // written by writeObject, the models may be encoded by CompactModelsCodec
+        private transient Map<String, Object> projectsByPath = new HashMap<String, Object>();
+        private final Map<String, AllModels> myIncludedBuilds = new LinkedHashMap<String, AllModels>();
         private final IdeaProject myIdeaProject;
 
         private BuildEnvironment myBuildEnvironment;
+        private boolean myCompactTransport;
 
         public AllModels(IdeaProject project) {
             myIdeaProject = project;
@@ -99,6 +183,10 @@ public class ProjectImportAction implements BuildAction<ProjectImportAction.AllM
         }
 
 
+        public void setCompactTransport(boolean compactTransport) {
+            myCompactTransport = compactTransport;
+        }
+
         public BuildEnvironment getBuildEnvironment() {
             return myBuildEnvironment;
         }
@@ -145,14 +233,94 @@ public class ProjectImportAction implements BuildAction<ProjectImportAction.AllM
             projectsByPath.put(extractMapKey(modelClazz, module), project);
         }
 
+        /**
+         * @param projectPath gradle path of the project the model belongs to, <code>null</code> for the root model
+         */
+        public void addExtraProject(Object project, Class modelClazz, String projectPath) {
+            projectsByPath.put(extractMapKey(modelClazz, projectPath), project);
+        }
+
+        /**
+         * Copies extra models of the given modules from the models of another import of the same project.
+         *
+         * @param source      models of the previous import
+         * @param modulePaths gradle paths of the modules to copy models for
+         */
+        public void copyExtraProjects(AllModels source, Set<String> modulePaths) {
+            for (Map.Entry<String, Object> entry : source.projectsByPath.entrySet()) {
+                String key = entry.getKey();
+                if (modulePaths.contains(key.substring(key.indexOf('@') + 1)) && !projectsByPath.containsKey(key)) {
+                    projectsByPath.put(key, entry.getValue());
+                }
+            }
+        }
+
+        /**
+         * @return models of the included builds by their root directory paths
+         */
+        public Map<String, AllModels> getIncludedBuilds() {
+            return Collections.unmodifiableMap(myIncludedBuilds);
+        }
+
+        public AllModels getIncludedBuild(String rootDirPath) {
+            return myIncludedBuilds.get(rootDirPath);
+        }
+
+        public void addIncludedBuild(String rootDirPath, AllModels models) {
+            myIncludedBuilds.put(rootDirPath, models);
+        }
+
         private String extractMapKey(Class modelClazz, IdeaModule module) {
-            return modelClazz.getName() + '@' + (module != null ? module.getGradleProject().getPath() : "root" + myIdeaProject.getName().hashCode());
+            return extractMapKey(modelClazz, module != null ? module.getGradleProject().getPath() : null);
+        }
+
+        private String extractMapKey(Class modelClazz, String projectPath) {
+            return modelClazz.getName() + '@' + (projectPath != null ? projectPath : "root" + myIdeaProject.getName().hashCode());
         }
 
         private static String extractModulePath(Class modelClazz, String key) {
             return key.replaceFirst(modelClazz.getName() + '@', "");
         }
 
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+
+            Map<String, Object> plainModels = projectsByPath;
+            byte[] compactModels = null;
+            if (myCompactTransport) {
+                Map<String, Object> encodable = new HashMap<String, Object>();
+                plainModels = new HashMap<String, Object>();
+                for (Map.Entry<String, Object> entry : projectsByPath.entrySet()) {
+                    if (CompactModelsCodec.canEncode(entry.getValue())) {
+                        encodable.put(entry.getKey(), entry.getValue());
+                    }
+                    else {
+                        plainModels.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                try {
+                    compactModels = encodable.isEmpty() ? null : CompactModelsCodec.encode(encodable);
+                }
+                catch (RuntimeException e) {
+                    // e.g. a model built by an incompatible builder, send everything as is
+                    plainModels = projectsByPath;
+                }
+            }
+            out.writeObject(plainModels);
+            out.writeObject(compactModels);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+
+            projectsByPath = new HashMap<String, Object>((Map<String, Object>) in.readObject());
+            byte[] compactModels = (byte[]) in.readObject();
+            if (compactModels != null) {
+                projectsByPath.putAll(CompactModelsCodec.decode(compactModels));
+            }
+        }
+
         @Override
         public String toString() {
             return "AllModels{" +
@@ -0,0 +1,301 @@
+package org.jetbrains.plugins.gradle.tooling.serialization;
+
+import org.gradle.tooling.model.DomainObjectSet;
+import org.gradle.tooling.model.UnsupportedMethodException;
+import org.gradle.tooling.model.idea.IdeaContentRoot;
+import org.gradle.tooling.model.idea.IdeaSourceDirectory;
+import org.jetbrains.plugins.gradle.tooling.model.BuildScriptClasspathModel;
+import org.jetbrains.plugins.gradle.tooling.model.ClasspathEntryModel;
+import org.jetbrains.plugins.gradle.tooling.model.ExtIdeaCompilerOutput;
+import org.jetbrains.plugins.gradle.tooling.model.ModuleExtendedModel;
+import org.jetbrains.plugins.gradle.tooling.web.WebConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.StreamCorruptedException;
+import java.util.*;
+
+/**
+ * Compact encoding of the extra models transferred from the gradle daemon to the IDE, used instead of the default java
+ * serialization of the model object graphs, see {@link org.jetbrains.plugins.gradle.tooling.model.ProjectImportAction.AllModels}.
+ * <p/>
+ * Strings are written once and referenced by index afterwards, paths share their parent paths, numbers are varint-encoded.
+ * Only {@link ModuleExtendedModel}, {@link BuildScriptClasspathModel} and {@link WebConfiguration} are supported, see
+ * {@link #canEncode(Object)}; the models are restored as plain value objects implementing the same interfaces.
+ * <p/>
+ * The stream starts with {@link #FORMAT_VERSION}, which must be changed on every change of the layout.
+ */
+public final class CompactModelsCodec {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x47584D43; // GXMC
+
+    private static final int MODULE_EXTENDED_MODEL = 1;
+    private static final int BUILD_SCRIPT_CLASSPATH_MODEL = 2;
+    private static final int WEB_CONFIGURATION = 3;
+
+    private CompactModelsCodec() {
+    }
+
+    public static boolean canEncode(Object model) {
+        return model instanceof ModuleExtendedModel || model instanceof BuildScriptClasspathModel || model instanceof WebConfiguration;
+    }
+
+    /**
+     * @param models models by their keys, every model must be {@link #canEncode(Object) supported}
+     */
+    public static byte[] encode(Map<String, Object> models) throws IOException {
+        ModelDataOutput out = new ModelDataOutput();
+        out.writeInt(MAGIC);
+        out.writeVarInt(FORMAT_VERSION);
+        out.writeVarInt(models.size());
+        for (Map.Entry<String, Object> entry : models.entrySet()) {
+            out.writeString(entry.getKey());
+            Object model = entry.getValue();
+            if (model instanceof ModuleExtendedModel) {
+                out.writeVarInt(MODULE_EXTENDED_MODEL);
+                writeModuleModel(out, (ModuleExtendedModel) model);
+            }
+            else if (model instanceof BuildScriptClasspathModel) {
+                out.writeVarInt(BUILD_SCRIPT_CLASSPATH_MODEL);
+                writeClasspathModel(out, (BuildScriptClasspathModel) model);
+            }
+            else if (model instanceof WebConfiguration) {
+                out.writeVarInt(WEB_CONFIGURATION);
+                writeWebConfiguration(out, (WebConfiguration) model);
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported model: " + model);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static Map<String, Object> decode(byte[] bytes) throws IOException {
+        ModelDataInput in = new ModelDataInput(bytes);
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a compact models stream");
+        }
+        int version = in.readVarInt();
+        if (version != FORMAT_VERSION) {
+            throw new InvalidObjectException("Unsupported compact models format: " + version + ", expected: " + FORMAT_VERSION);
+        }
+
+        int size = in.readVarInt();
+        Map<String, Object> result = new HashMap<String, Object>();
+        for (int i = 0; i < size; i++) {
+            String key = in.readString();
+            int kind = in.readVarInt();
+            switch (kind) {
+                case MODULE_EXTENDED_MODEL:
+                    result.put(key, readModuleModel(in));
+                    break;
+                case BUILD_SCRIPT_CLASSPATH_MODEL:
+                    result.put(key, readClasspathModel(in));
+                    break;
+                case WEB_CONFIGURATION:
+                    result.put(key, readWebConfiguration(in));
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unknown model kind: " + kind);
+            }
+        }
+        return result;
+    }
+
+    private static void writeModuleModel(ModelDataOutput out, ModuleExtendedModel model) throws IOException {
+        out.writeString(model.getName());
+        out.writeString(model.getGroup());
+        out.writeString(model.getVersion());
+        out.writeFile(model.getBuildDir());
+        out.writeFiles(model.getArtifacts());
+
+        DomainObjectSet<? extends IdeaContentRoot> contentRoots = model.getContentRoots();
+        out.writeVarInt(contentRoots == null ? 0 : contentRoots.size());
+        if (contentRoots != null) {
+            for (IdeaContentRoot contentRoot : contentRoots) {
+                out.writeFile(contentRoot.getRootDirectory());
+                writeSourceDirectories(out, contentRoot.getSourceDirectories());
+                writeSourceDirectories(out, contentRoot.getTestDirectories());
+                writeSourceDirectories(out, getResourceDirectories(contentRoot, false));
+                writeSourceDirectories(out, getResourceDirectories(contentRoot, true));
+                writeSourceDirectories(out, contentRoot.getGeneratedSourceDirectories());
+                writeSourceDirectories(out, contentRoot.getGeneratedTestDirectories());
+                out.writeFiles(contentRoot.getExcludeDirectories());
+            }
+        }
+
+        ExtIdeaCompilerOutput compilerOutput = model.getCompilerOutput();
+        out.writeBoolean(compilerOutput != null);
+        if (compilerOutput != null) {
+            out.writeFile(compilerOutput.getMainClassesDir());
+            out.writeFile(compilerOutput.getMainResourcesDir());
+            out.writeFile(compilerOutput.getTestClassesDir());
+            out.writeFile(compilerOutput.getTestResourcesDir());
+        }
+    }
+
+    private static DecodedModels.ModuleModel readModuleModel(ModelDataInput in) throws IOException {
+        String name = in.readString();
+        String group = in.readString();
+        String version = in.readString();
+        File buildDir = in.readFile();
+        List<File> artifacts = in.readFiles();
+
+        int contentRootsCount = in.readVarInt();
+        List<DecodedModels.ContentRoot> contentRoots = new ArrayList<DecodedModels.ContentRoot>(contentRootsCount);
+        for (int i = 0; i < contentRootsCount; i++) {
+            File rootDirectory = in.readFile();
+            List<DecodedModels.SourceDirectory> sourceDirectories = readSourceDirectories(in);
+            List<DecodedModels.SourceDirectory> testDirectories = readSourceDirectories(in);
+            List<DecodedModels.SourceDirectory> resourceDirectories = readSourceDirectories(in);
+            List<DecodedModels.SourceDirectory> testResourceDirectories = readSourceDirectories(in);
+            List<DecodedModels.SourceDirectory> generatedSourceDirectories = readSourceDirectories(in);
+            List<DecodedModels.SourceDirectory> generatedTestDirectories = readSourceDirectories(in);
+            List<File> excludeDirectories = in.readFiles();
+            contentRoots.add(new DecodedModels.ContentRoot(
+                rootDirectory,
+                sourceDirectories,
+                testDirectories,
+                resourceDirectories,
+                testResourceDirectories,
+                generatedSourceDirectories,
+                generatedTestDirectories,
+                excludeDirectories == null ? new HashSet<File>() : new HashSet<File>(excludeDirectories)
+            ));
+        }
+
+        DecodedModels.CompilerOutput compilerOutput = null;
+        if (in.readBoolean()) {
+            compilerOutput = new DecodedModels.CompilerOutput(in.readFile(), in.readFile(), in.readFile(), in.readFile());
+        }
+        return new DecodedModels.ModuleModel(name, group, version, buildDir, artifacts, contentRoots, compilerOutput);
+    }
+
+    /**
+     * Resource directories are not known to the content roots built by the old versions of gradle.
+     */
+    private static DomainObjectSet<? extends IdeaSourceDirectory> getResourceDirectories(IdeaContentRoot contentRoot, boolean test) {
+        try {
+            return test ? contentRoot.getTestResourceDirectories() : contentRoot.getResourceDirectories();
+        }
+        catch (UnsupportedMethodException e) {
+            return null;
+        }
+    }
+
+    private static void writeSourceDirectories(ModelDataOutput out, DomainObjectSet<? extends IdeaSourceDirectory> directories)
+        throws IOException {
+        out.writeVarInt(directories == null ? 0 : directories.size());
+        if (directories != null) {
+            for (IdeaSourceDirectory directory : directories) {
+                out.writeFile(directory.getDirectory());
+                out.writeBoolean(directory.isGenerated());
+            }
+        }
+    }
+
+    private static List<DecodedModels.SourceDirectory> readSourceDirectories(ModelDataInput in) throws IOException {
+        int size = in.readVarInt();
+        List<DecodedModels.SourceDirectory> result = new ArrayList<DecodedModels.SourceDirectory>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new DecodedModels.SourceDirectory(in.readFile(), in.readBoolean()));
+        }
+        return result;
+    }
+
+    private static void writeClasspathModel(ModelDataOutput out, BuildScriptClasspathModel model) throws IOException {
+        out.writeFile(model.getGradleHomeDir());
+        out.writeString(model.getGradleVersion());
+        DomainObjectSet<? extends ClasspathEntryModel> classpath = model.getClasspath();
+        out.writeVarInt(classpath == null ? 0 : classpath.size());
+        if (classpath != null) {
+            for (ClasspathEntryModel entry : classpath) {
+                out.writePaths(entry.getClasses());
+                out.writePaths(entry.getSources());
+                out.writePaths(entry.getJavadoc());
+            }
+        }
+    }
+
+    private static DecodedModels.ClasspathModel readClasspathModel(ModelDataInput in) throws IOException {
+        File gradleHomeDir = in.readFile();
+        String gradleVersion = in.readString();
+        int size = in.readVarInt();
+        List<DecodedModels.ClasspathEntry> classpath = new ArrayList<DecodedModels.ClasspathEntry>(size);
+        for (int i = 0; i < size; i++) {
+            classpath.add(new DecodedModels.ClasspathEntry(in.readPaths(), in.readPaths(), in.readPaths()));
+        }
+        return new DecodedModels.ClasspathModel(classpath, gradleHomeDir, gradleVersion);
+    }
+
+    private static void writeWebConfiguration(ModelDataOutput out, WebConfiguration configuration) throws IOException {
+        List<? extends WebConfiguration.WarModel> warModels = configuration.getWarModels();
+        out.writeVarInt(warModels == null ? 0 : warModels.size());
+        if (warModels == null) {
+            return;
+        }
+        for (WebConfiguration.WarModel warModel : warModels) {
+            out.writeString(warModel.getWarName());
+            out.writeString(warModel.getWebAppDirName());
+            out.writeFile(warModel.getWebAppDir());
+            out.writeFile(warModel.getWebXml());
+
+            List<WebConfiguration.WebResource> webResources = warModel.getWebResources();
+            out.writeVarInt(webResources == null ? 0 : webResources.size());
+            if (webResources != null) {
+                for (WebConfiguration.WebResource resource : webResources) {
+                    out.writeString(resource.getWarDirectory());
+                    out.writeString(resource.getRelativePath());
+                    out.writeFile(resource.getFile());
+                    out.writeStrings(resource.getIncludes());
+                    out.writeStrings(resource.getExcludes());
+                }
+            }
+
+            out.writeFiles(warModel.getClasspath());
+            out.writeString(warModel.getManifestContent());
+        }
+    }
+
+    private static DecodedModels.Web readWebConfiguration(ModelDataInput in) throws IOException {
+        int size = in.readVarInt();
+        List<DecodedModels.War> warModels = new ArrayList<DecodedModels.War>(size);
+        for (int i = 0; i < size; i++) {
+            String warName = in.readString();
+            String webAppDirName = in.readString();
+            File webAppDir = in.readFile();
+            File webXml = in.readFile();
+
+            int resourcesCount = in.readVarInt();
+            List<WebConfiguration.WebResource> webResources = new ArrayList<WebConfiguration.WebResource>(resourcesCount);
+            for (int j = 0; j < resourcesCount; j++) {
+                webResources.add(new DecodedModels.WebResource(
+                    in.readString(),
+                    in.readString(),
+                    in.readFile(),
+                    emptyIfNull(in.readStrings()),
+                    emptyIfNull(in.readStrings())
+                ));
+            }
+
+            List<File> classpath = in.readFiles();
+            String manifestContent = in.readString();
+            warModels.add(new DecodedModels.War(
+                warName,
+                webAppDirName,
+                webAppDir,
+                webXml,
+                webResources,
+                classpath == null ? null : new LinkedHashSet<File>(classpath),
+                manifestContent
+            ));
+        }
+        return new DecodedModels.Web(warModels);
+    }
+
+    private static Set<String> emptyIfNull(Set<String> set) {
+        return set == null ? Collections.<String>emptySet() : set;
+    }
+}
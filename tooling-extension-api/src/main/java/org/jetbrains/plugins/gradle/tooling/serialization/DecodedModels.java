@@ -0,0 +1,395 @@
+package org.jetbrains.plugins.gradle.tooling.serialization;
+
+import org.gradle.tooling.model.DomainObjectSet;
+import org.gradle.tooling.model.idea.IdeaContentRoot;
+import org.gradle.tooling.model.idea.IdeaSourceDirectory;
+import org.gradle.tooling.model.internal.ImmutableDomainObjectSet;
+import org.jetbrains.plugins.gradle.tooling.model.BuildScriptClasspathModel;
+import org.jetbrains.plugins.gradle.tooling.model.ClasspathEntryModel;
+import org.jetbrains.plugins.gradle.tooling.model.ExtIdeaCompilerOutput;
+import org.jetbrains.plugins.gradle.tooling.model.ModuleExtendedModel;
+import org.jetbrains.plugins.gradle.tooling.web.WebConfiguration;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Models restored by {@link CompactModelsCodec} on the IDE side.
+ */
+final class DecodedModels {
+    private DecodedModels() {
+    }
+
+    static final class ModuleModel implements ModuleExtendedModel {
+        private static final long serialVersionUID = 1L;
+
+        private final String myName;
+        private final String myGroup;
+        private final String myVersion;
+        private final File myBuildDir;
+        private final List<File> myArtifacts;
+        private final List<ContentRoot> myContentRoots;
+        private final CompilerOutput myCompilerOutput;
+
+        ModuleModel(String name,
+                    String group,
+                    String version,
+                    File buildDir,
+                    List<File> artifacts,
+                    List<ContentRoot> contentRoots,
+                    CompilerOutput compilerOutput) {
+            myName = name;
+            myGroup = group;
+            myVersion = version;
+            myBuildDir = buildDir;
+            myArtifacts = artifacts;
+            myContentRoots = contentRoots;
+            myCompilerOutput = compilerOutput;
+        }
+
+        @Override
+        public String getGroup() {
+            return myGroup;
+        }
+
+        @Override
+        public String getName() {
+            return myName;
+        }
+
+        @Override
+        public String getVersion() {
+            return myVersion;
+        }
+
+        @Override
+        public List<File> getArtifacts() {
+            return myArtifacts;
+        }
+
+        @Override
+        public DomainObjectSet<? extends IdeaContentRoot> getContentRoots() {
+            return ImmutableDomainObjectSet.of(myContentRoots);
+        }
+
+        @Override
+        public File getBuildDir() {
+            return myBuildDir;
+        }
+
+        @Override
+        public ExtIdeaCompilerOutput getCompilerOutput() {
+            return myCompilerOutput;
+        }
+    }
+
+    static final class ContentRoot implements IdeaContentRoot, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final File myRootDirectory;
+        private final List<SourceDirectory> mySourceDirectories;
+        private final List<SourceDirectory> myTestDirectories;
+        private final List<SourceDirectory> myResourceDirectories;
+        private final List<SourceDirectory> myTestResourceDirectories;
+        private final List<SourceDirectory> myGeneratedSourceDirectories;
+        private final List<SourceDirectory> myGeneratedTestDirectories;
+        private final Set<File> myExcludeDirectories;
+
+        ContentRoot(File rootDirectory,
+                    List<SourceDirectory> sourceDirectories,
+                    List<SourceDirectory> testDirectories,
+                    List<SourceDirectory> resourceDirectories,
+                    List<SourceDirectory> testResourceDirectories,
+                    List<SourceDirectory> generatedSourceDirectories,
+                    List<SourceDirectory> generatedTestDirectories,
+                    Set<File> excludeDirectories) {
+            myRootDirectory = rootDirectory;
+            mySourceDirectories = sourceDirectories;
+            myTestDirectories = testDirectories;
+            myResourceDirectories = resourceDirectories;
+            myTestResourceDirectories = testResourceDirectories;
+            myGeneratedSourceDirectories = generatedSourceDirectories;
+            myGeneratedTestDirectories = generatedTestDirectories;
+            myExcludeDirectories = excludeDirectories;
+        }
+
+        @Override
+        public File getRootDirectory() {
+            return myRootDirectory;
+        }
+
+        @Override
+        public DomainObjectSet<? extends IdeaSourceDirectory> getSourceDirectories() {
+            return ImmutableDomainObjectSet.of(mySourceDirectories);
+        }
+
+        @Override
+        public DomainObjectSet<? extends IdeaSourceDirectory> getTestDirectories() {
+            return ImmutableDomainObjectSet.of(myTestDirectories);
+        }
+
+        @Override
+        public DomainObjectSet<? extends IdeaSourceDirectory> getResourceDirectories() {
+            return ImmutableDomainObjectSet.of(myResourceDirectories);
+        }
+
+        @Override
+        public DomainObjectSet<? extends IdeaSourceDirectory> getTestResourceDirectories() {
+            return ImmutableDomainObjectSet.of(myTestResourceDirectories);
+        }
+
+        @Override
+        public DomainObjectSet<? extends IdeaSourceDirectory> getGeneratedSourceDirectories() {
+            return ImmutableDomainObjectSet.of(myGeneratedSourceDirectories);
+        }
+
+        @Override
+        public DomainObjectSet<? extends IdeaSourceDirectory> getGeneratedTestDirectories() {
+            return ImmutableDomainObjectSet.of(myGeneratedTestDirectories);
+        }
+
+        @Override
+        public Set<File> getExcludeDirectories() {
+            return myExcludeDirectories;
+        }
+    }
+
+    static final class SourceDirectory implements IdeaSourceDirectory, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final File myDirectory;
+        private final boolean myGenerated;
+
+        SourceDirectory(File directory, boolean generated) {
+            myDirectory = directory;
+            myGenerated = generated;
+        }
+
+        @Override
+        public File getDirectory() {
+            return myDirectory;
+        }
+
+        @Override
+        public boolean isGenerated() {
+            return myGenerated;
+        }
+    }
+
+    static final class CompilerOutput implements ExtIdeaCompilerOutput {
+        private static final long serialVersionUID = 1L;
+
+        private final File myMainClassesDir;
+        private final File myMainResourcesDir;
+        private final File myTestClassesDir;
+        private final File myTestResourcesDir;
+
+        CompilerOutput(File mainClassesDir, File mainResourcesDir, File testClassesDir, File testResourcesDir) {
+            myMainClassesDir = mainClassesDir;
+            myMainResourcesDir = mainResourcesDir;
+            myTestClassesDir = testClassesDir;
+            myTestResourcesDir = testResourcesDir;
+        }
+
+        @Override
+        public File getMainClassesDir() {
+            return myMainClassesDir;
+        }
+
+        @Override
+        public File getMainResourcesDir() {
+            return myMainResourcesDir;
+        }
+
+        @Override
+        public File getTestClassesDir() {
+            return myTestClassesDir;
+        }
+
+        @Override
+        public File getTestResourcesDir() {
+            return myTestResourcesDir;
+        }
+    }
+
+    static final class ClasspathModel implements BuildScriptClasspathModel {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ClasspathEntry> myClasspath;
+        private final File myGradleHomeDir;
+        private final String myGradleVersion;
+
+        ClasspathModel(List<ClasspathEntry> classpath, File gradleHomeDir, String gradleVersion) {
+            myClasspath = classpath;
+            myGradleHomeDir = gradleHomeDir;
+            myGradleVersion = gradleVersion;
+        }
+
+        @Override
+        public DomainObjectSet<? extends ClasspathEntryModel> getClasspath() {
+            return ImmutableDomainObjectSet.of(myClasspath);
+        }
+
+        @Override
+        public File getGradleHomeDir() {
+            return myGradleHomeDir;
+        }
+
+        @Override
+        public String getGradleVersion() {
+            return myGradleVersion;
+        }
+    }
+
+    static final class ClasspathEntry implements ClasspathEntryModel, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Set<String> myClasses;
+        private final Set<String> mySources;
+        private final Set<String> myJavadoc;
+
+        ClasspathEntry(Set<String> classes, Set<String> sources, Set<String> javadoc) {
+            myClasses = classes;
+            mySources = sources;
+            myJavadoc = javadoc;
+        }
+
+        @Override
+        public Set<String> getClasses() {
+            return myClasses;
+        }
+
+        @Override
+        public Set<String> getSources() {
+            return mySources;
+        }
+
+        @Override
+        public Set<String> getJavadoc() {
+            return myJavadoc;
+        }
+    }
+
+    static final class Web implements WebConfiguration {
+        private static final long serialVersionUID = 1L;
+
+        private final List<War> myWarModels;
+
+        Web(List<War> warModels) {
+            myWarModels = warModels;
+        }
+
+        @Override
+        public List<? extends WarModel> getWarModels() {
+            return myWarModels;
+        }
+    }
+
+    static final class War implements WebConfiguration.WarModel {
+        private static final long serialVersionUID = 1L;
+
+        private final String myWarName;
+        private final String myWebAppDirName;
+        private final File myWebAppDir;
+        private final File myWebXml;
+        private final List<WebConfiguration.WebResource> myWebResources;
+        private final Set<File> myClasspath;
+        private final String myManifestContent;
+
+        War(String warName,
+            String webAppDirName,
+            File webAppDir,
+            File webXml,
+            List<WebConfiguration.WebResource> webResources,
+            Set<File> classpath,
+            String manifestContent) {
+            myWarName = warName;
+            myWebAppDirName = webAppDirName;
+            myWebAppDir = webAppDir;
+            myWebXml = webXml;
+            myWebResources = webResources;
+            myClasspath = classpath;
+            myManifestContent = manifestContent;
+        }
+
+        @Override
+        public String getWarName() {
+            return myWarName;
+        }
+
+        @Override
+        public String getWebAppDirName() {
+            return myWebAppDirName;
+        }
+
+        @Override
+        public File getWebAppDir() {
+            return myWebAppDir;
+        }
+
+        @Override
+        public File getWebXml() {
+            return myWebXml;
+        }
+
+        @Override
+        public List<WebConfiguration.WebResource> getWebResources() {
+            return myWebResources;
+        }
+
+        @Override
+        public Set<File> getClasspath() {
+            return myClasspath;
+        }
+
+        @Override
+        public String getManifestContent() {
+            return myManifestContent;
+        }
+    }
+
+    static final class WebResource implements WebConfiguration.WebResource {
+        private static final long serialVersionUID = 1L;
+
+        private final String myWarDirectory;
+        private final String myRelativePath;
+        private final File myFile;
+        private final Set<String> myIncludes;
+        private final Set<String> myExcludes;
+
+        WebResource(String warDirectory, String relativePath, File file, Set<String> includes, Set<String> excludes) {
+            myWarDirectory = warDirectory;
+            myRelativePath = relativePath;
+            myFile = file;
+            myIncludes = includes;
+            myExcludes = excludes;
+        }
+
+        @Override
+        public String getWarDirectory() {
+            return myWarDirectory;
+        }
+
+        @Override
+        public String getRelativePath() {
+            return myRelativePath;
+        }
+
+        @Override
+        public File getFile() {
+            return myFile;
+        }
+
+        @Override
+        public Set<String> getIncludes() {
+            return myIncludes;
+        }
+
+        @Override
+        public Set<String> getExcludes() {
+            return myExcludes;
+        }
+    }
+}
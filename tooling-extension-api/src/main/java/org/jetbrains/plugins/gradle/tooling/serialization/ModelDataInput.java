@@ -0,0 +1,138 @@
+package org.jetbrains.plugins.gradle.tooling.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.jetbrains.plugins.gradle.tooling.serialization.ModelDataOutput.NEW;
+import static org.jetbrains.plugins.gradle.tooling.serialization.ModelDataOutput.NULL;
+import static org.jetbrains.plugins.gradle.tooling.serialization.ModelDataOutput.REF_OFFSET;
+
+/**
+ * Reader of the stream written by {@link ModelDataOutput}.
+ */
+class ModelDataInput {
+    private final DataInputStream myIn;
+    private final List<String> myStrings = new ArrayList<String>();
+    private final List<String> myPaths = new ArrayList<String>();
+    // files are shared by all the models which refer to the same path
+    private final Map<String, File> myFiles = new HashMap<String, File>();
+
+    ModelDataInput(byte[] bytes) {
+        myIn = new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = myIn.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    boolean readBoolean() throws IOException {
+        return myIn.readBoolean();
+    }
+
+    int readInt() throws IOException {
+        return myIn.readInt();
+    }
+
+    String readString() throws IOException {
+        int tag = readVarInt();
+        if (tag == NULL) {
+            return null;
+        }
+        if (tag == NEW) {
+            byte[] bytes = new byte[readVarInt()];
+            myIn.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            myStrings.add(value);
+            return value;
+        }
+        return get(myStrings, tag - REF_OFFSET);
+    }
+
+    String readPath() throws IOException {
+        int tag = readVarInt();
+        if (tag == NULL) {
+            return null;
+        }
+        if (tag != NEW) {
+            return get(myPaths, tag - REF_OFFSET);
+        }
+
+        String parent = readPath();
+        String segment = readString();
+        if (segment == null) {
+            throw new StreamCorruptedException("Malformed path");
+        }
+        String path = parent == null ? segment : parent + segment;
+        myPaths.add(path);
+        return path;
+    }
+
+    File readFile() throws IOException {
+        String path = readPath();
+        if (path == null) {
+            return null;
+        }
+        File file = myFiles.get(path);
+        if (file == null) {
+            file = new File(path);
+            myFiles.put(path, file);
+        }
+        return file;
+    }
+
+    List<File> readFiles() throws IOException {
+        int size = readVarInt();
+        if (size == NULL) {
+            return null;
+        }
+        List<File> result = new ArrayList<File>(size - 1);
+        for (int i = 1; i < size; i++) {
+            result.add(readFile());
+        }
+        return result;
+    }
+
+    Set<String> readPaths() throws IOException {
+        int size = readVarInt();
+        if (size == NULL) {
+            return null;
+        }
+        Set<String> result = new LinkedHashSet<String>();
+        for (int i = 1; i < size; i++) {
+            result.add(readPath());
+        }
+        return result;
+    }
+
+    Set<String> readStrings() throws IOException {
+        int size = readVarInt();
+        if (size == NULL) {
+            return null;
+        }
+        Set<String> result = new LinkedHashSet<String>();
+        for (int i = 1; i < size; i++) {
+            result.add(readString());
+        }
+        return result;
+    }
+
+    private static String get(List<String> table, int index) throws IOException {
+        if (index < 0 || index >= table.size()) {
+            throw new StreamCorruptedException("Unknown reference: " + index);
+        }
+        return table.get(index);
+    }
+}
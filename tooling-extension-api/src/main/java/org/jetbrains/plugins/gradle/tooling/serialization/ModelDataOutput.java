@@ -0,0 +1,130 @@
+package org.jetbrains.plugins.gradle.tooling.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writer of the compact models stream, see {@link CompactModelsCodec}.
+ * <p/>
+ * Every string is written once and referenced by its index afterwards. Paths are split at the last separator, so the parent
+ * path is shared by all its children and written only once as well.
+ */
+class ModelDataOutput {
+    static final int NULL = 0;
+    static final int NEW = 1;
+    static final int REF_OFFSET = 2;
+
+    private final ByteArrayOutputStream myBytes = new ByteArrayOutputStream(8192);
+    private final DataOutputStream myOut = new DataOutputStream(myBytes);
+    private final Map<String, Integer> myStrings = new HashMap<String, Integer>();
+    private final Map<String, Integer> myPaths = new HashMap<String, Integer>();
+
+    void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            myOut.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        myOut.writeByte(value);
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+        myOut.writeBoolean(value);
+    }
+
+    void writeInt(int value) throws IOException {
+        myOut.writeInt(value);
+    }
+
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(NULL);
+            return;
+        }
+        Integer index = myStrings.get(value);
+        if (index != null) {
+            writeVarInt(index + REF_OFFSET);
+            return;
+        }
+        myStrings.put(value, myStrings.size());
+        writeVarInt(NEW);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        myOut.write(bytes);
+    }
+
+    /**
+     * Writes the path as a reference to its parent path followed by the last segment, the segment starts with the separator.
+     */
+    void writePath(String path) throws IOException {
+        if (path == null) {
+            writeVarInt(NULL);
+            return;
+        }
+        Integer index = myPaths.get(path);
+        if (index != null) {
+            writeVarInt(index + REF_OFFSET);
+            return;
+        }
+
+        writeVarInt(NEW);
+        int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        if (separator <= 0) {
+            writeVarInt(NULL);
+            writeString(path);
+        }
+        else {
+            writePath(path.substring(0, separator));
+            writeString(path.substring(separator));
+        }
+        // the parent is registered first, the reader assigns indices in the same order
+        myPaths.put(path, myPaths.size());
+    }
+
+    void writeFile(File file) throws IOException {
+        writePath(file == null ? null : file.getPath());
+    }
+
+    void writeFiles(Collection<? extends File> files) throws IOException {
+        if (files == null) {
+            writeVarInt(NULL);
+            return;
+        }
+        writeVarInt(files.size() + 1);
+        for (File file : files) {
+            writeFile(file);
+        }
+    }
+
+    void writePaths(Collection<String> paths) throws IOException {
+        if (paths == null) {
+            writeVarInt(NULL);
+            return;
+        }
+        writeVarInt(paths.size() + 1);
+        for (String path : paths) {
+            writePath(path);
+        }
+    }
+
+    void writeStrings(Collection<String> strings) throws IOException {
+        if (strings == null) {
+            writeVarInt(NULL);
+            return;
+        }
+        writeVarInt(strings.size() + 1);
+        for (String string : strings) {
+            writeString(string);
+        }
+    }
+
+    byte[] toByteArray() throws IOException {
+        myOut.flush();
+        return myBytes.toByteArray();
+    }
+}
@@ -44,11 +44,30 @@ public interface WebConfiguration extends Serializable {
     String getManifestContent();
   }
 
+  /**
+   * A file copied to the war, or a source directory whose content is copied to the war. The files of a directory resource are
+   * not reported one by one: a consumer must copy only the files of the directory matching {@link #getIncludes()} and not
+   * matching {@link #getExcludes()}, copying the whole directory would also copy the files excluded by the war spec.
+   */
   interface WebResource extends Serializable {
     String getWarDirectory();
 
     String getRelativePath();
 
+    /**
+     * @return the resource file, or the root of the resource directory which is copied with all its content matching
+     * {@link #getIncludes()} and {@link #getExcludes()}
+     */
     File getFile();
+
+    /**
+     * @return include patterns of the resource directory, empty set means all the files are included
+     */
+    Set<String> getIncludes();
+
+    /**
+     * @return exclude patterns of the resource directory
+     */
+    Set<String> getExcludes();
   }
 }
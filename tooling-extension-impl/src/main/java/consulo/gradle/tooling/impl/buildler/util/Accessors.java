@@ -0,0 +1,220 @@
+package consulo.gradle.tooling.impl.buildler.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of method handles for the members of gradle classes which are not a part of the public API or differ between gradle
+ * versions. Every member is looked up once per class, missing members are cached too, so the callers can fall back to
+ * another member cheaply.
+ * <p/>
+ * The handles are attached to the classes with {@link ClassValue}, so the cache does not keep classes of build scripts
+ * (and their class loaders) alive after the build.
+ */
+public final class Accessors {
+    private static final MethodHandle MISSING = MethodHandles.constant(Object.class, null);
+
+    private static final ClassValue<ConcurrentHashMap<Key, MethodHandle>> ourHandles =
+        new ClassValue<ConcurrentHashMap<Key, MethodHandle>>() {
+            @Override
+            protected ConcurrentHashMap<Key, MethodHandle> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<Key, MethodHandle>();
+            }
+        };
+
+    private Accessors() {
+    }
+
+    /**
+     * @return handle of the public method (like {@link Class#getMethod(String, Class[])}), <code>null</code> if there is no such method
+     */
+    public static MethodHandle findMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        return find(clazz, new Key(Kind.METHOD, name, parameterTypes));
+    }
+
+    /**
+     * @return handle of the method declared by the class itself (like {@link Class#getDeclaredMethod(String, Class[])}),
+     * <code>null</code> if there is no such method
+     */
+    public static MethodHandle findDeclaredMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        return find(clazz, new Key(Kind.DECLARED_METHOD, name, parameterTypes));
+    }
+
+    /**
+     * @return getter of the public field (like {@link Class#getField(String)}), <code>null</code> if there is no such field
+     */
+    public static MethodHandle findField(Class<?> clazz, String name) {
+        return find(clazz, new Key(Kind.FIELD, name));
+    }
+
+    /**
+     * @return getter of the field declared by the class itself (like {@link Class#getDeclaredField(String)}),
+     * <code>null</code> if there is no such field
+     */
+    public static MethodHandle findDeclaredField(Class<?> clazz, String name) {
+        return find(clazz, new Key(Kind.DECLARED_FIELD, name));
+    }
+
+    /**
+     * Invokes the public method of the given object, see {@link #findMethod(Class, String, Class[])}.
+     *
+     * @throws NoSuchMethodException if there is no such method
+     */
+    public static Object invokeMethod(Object target, String name) throws NoSuchMethodException {
+        MethodHandle handle = findMethod(target.getClass(), name);
+        if (handle == null) {
+            throw new NoSuchMethodException(target.getClass().getName() + "." + name);
+        }
+        return invoke(handle, target);
+    }
+
+    /**
+     * Reads the public field of the given object, see {@link #findField(Class, String)}.
+     *
+     * @throws NoSuchFieldException if there is no such field
+     */
+    public static Object getField(Object target, String name) throws NoSuchFieldException {
+        MethodHandle handle = findField(target.getClass(), name);
+        if (handle == null) {
+            throw new NoSuchFieldException(target.getClass().getName() + "." + name);
+        }
+        return invoke(handle, target);
+    }
+
+    /**
+     * Reads the field declared by the class of the given object, see {@link #findDeclaredField(Class, String)}.
+     *
+     * @throws NoSuchFieldException if there is no such field
+     */
+    public static Object getDeclaredField(Object target, String name) throws NoSuchFieldException {
+        MethodHandle handle = findDeclaredField(target.getClass(), name);
+        if (handle == null) {
+            throw new NoSuchFieldException(target.getClass().getName() + "." + name);
+        }
+        return invoke(handle, target);
+    }
+
+    public static Object invoke(MethodHandle handle, Object target, Object... args) {
+        try {
+            if (args.length == 0) {
+                return handle.invoke(target);
+            }
+            Object[] arguments = new Object[args.length + 1];
+            arguments[0] = target;
+            System.arraycopy(args, 0, arguments, 1, args.length);
+            return handle.invokeWithArguments(arguments);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static MethodHandle find(Class<?> clazz, Key key) {
+        ConcurrentHashMap<Key, MethodHandle> handles = ourHandles.get(clazz);
+        MethodHandle handle = handles.get(key);
+        if (handle == null) {
+            handle = lookup(clazz, key);
+            MethodHandle previous = handles.putIfAbsent(key, handle);
+            if (previous != null) {
+                handle = previous;
+            }
+        }
+        return handle == MISSING ? null : handle;
+    }
+
+    private static MethodHandle lookup(Class<?> clazz, Key key) {
+        try {
+            switch (key.myKind) {
+                case METHOD: {
+                    Method method = clazz.getMethod(key.myName, key.myParameterTypes);
+                    makeAccessible(method);
+                    return MethodHandles.lookup().unreflect(method);
+                }
+                case DECLARED_METHOD: {
+                    Method method = clazz.getDeclaredMethod(key.myName, key.myParameterTypes);
+                    makeAccessible(method);
+                    return MethodHandles.lookup().unreflect(method);
+                }
+                case FIELD: {
+                    Field field = clazz.getField(key.myName);
+                    makeAccessible(field);
+                    return MethodHandles.lookup().unreflectGetter(field);
+                }
+                case DECLARED_FIELD: {
+                    Field field = clazz.getDeclaredField(key.myName);
+                    makeAccessible(field);
+                    return MethodHandles.lookup().unreflectGetter(field);
+                }
+            }
+        }
+        catch (NoSuchMethodException ignored) {
+        }
+        catch (NoSuchFieldException ignored) {
+        }
+        catch (IllegalAccessException ignored) {
+        }
+        catch (SecurityException ignored) {
+        }
+        return MISSING;
+    }
+
+    private static void makeAccessible(AccessibleObject member) {
+        // public members of non-public classes (e.g. anonymous classes of gradle) are not accessible as well
+        try {
+            member.setAccessible(true);
+        }
+        catch (RuntimeException ignored) {
+        }
+    }
+
+    private enum Kind {
+        METHOD, DECLARED_METHOD, FIELD, DECLARED_FIELD
+    }
+
+    private static final class Key {
+        private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+
+        private final Kind myKind;
+        private final String myName;
+        private final Class<?>[] myParameterTypes;
+
+        private Key(Kind kind, String name, Class<?>... parameterTypes) {
+            myKind = kind;
+            myName = name;
+            myParameterTypes = parameterTypes == null ? NO_PARAMETERS : parameterTypes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return myKind == key.myKind
+                && myName.equals(key.myName)
+                && Arrays.equals(myParameterTypes, key.myParameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = myKind.hashCode();
+            result = 31 * result + myName.hashCode();
+            result = 31 * result + Arrays.hashCode(myParameterTypes);
+            return result;
+        }
+    }
+}
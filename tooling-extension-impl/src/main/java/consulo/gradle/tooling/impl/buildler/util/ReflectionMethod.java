@@ -1,34 +1,23 @@
 package consulo.gradle.tooling.impl.buildler.util;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 
 /**
  * @author VISTALL
  * @since 30/12/2020
  */
 public class ReflectionMethod<ReturnMethod, InstanceObject> {
-  private Method myMethod;
+  private final MethodHandle myMethod;
 
   public ReflectionMethod(Class<? extends InstanceObject> clazz, String methodName) {
-    try {
-      myMethod = clazz.getDeclaredMethod(methodName);
-      myMethod.setAccessible(true);
-    }
-    catch (Exception ignored) {
-    }
+    myMethod = Accessors.findDeclaredMethod(clazz, methodName);
   }
 
   @SuppressWarnings("unchecked")
   public ReturnMethod invoke(InstanceObject instanceObject) {
-    try {
-      if (myMethod == null) {
-        return null;
-      }
-      return (ReturnMethod)myMethod.invoke(instanceObject);
-    }
-    catch (IllegalAccessException | InvocationTargetException e) {
-      throw new RuntimeException(e);
+    if (myMethod == null) {
+      return null;
     }
+    return (ReturnMethod)Accessors.invoke(myMethod, instanceObject);
   }
 }
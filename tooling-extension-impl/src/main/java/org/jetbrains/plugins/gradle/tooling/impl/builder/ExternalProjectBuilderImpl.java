@@ -15,7 +15,9 @@
  */
 package org.jetbrains.plugins.gradle.tooling.impl.builder;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import consulo.gradle.tooling.impl.buildler.util.Accessors;
 import consulo.externalSystem.rt.model.*;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
@@ -25,15 +27,23 @@ import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.util.PatternFilterable;
 import org.jetbrains.plugins.gradle.tooling.impl.ErrorMessageBuilder;
 import org.jetbrains.plugins.gradle.tooling.impl.ModelBuilderService;
+import org.jetbrains.plugins.gradle.tooling.impl.internal.ExtraModelBuilder;
+import org.jetbrains.plugins.gradle.tooling.impl.internal.ProjectModelCache;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class ExternalProjectBuilderImpl implements ModelBuilderService {
+    // Gson is thread-safe, filters of all the projects are serialized by the same instance
+    private static final Gson GSON = new GsonBuilder().create();
 
-    private final Map<String, ExternalProject> cache = new ConcurrentHashMap<>();
+    // attached to the action classes, so classes of build scripts are not kept alive by the cache
+    private static final ClassValue<CopyActionLayout> ourCopyActionLayouts = new ClassValue<CopyActionLayout>() {
+        @Override
+        protected CopyActionLayout computeValue(Class<?> type) {
+            return new CopyActionLayout(type);
+        }
+    };
 
     @Override
     public boolean canBuild(String modelName) {
@@ -42,7 +52,8 @@ public class ExternalProjectBuilderImpl implements ModelBuilderService {
 
     @Override
     public Object buildAll(final String modelName, final Project project) {
-        ExternalProject externalProject = cache.get(project.getPath());
+        final ProjectModelCache projectCache = ExtraModelBuilder.getProjectCache(project);
+        Object externalProject = projectCache.getModel(modelName);
         if (externalProject != null) {
             return externalProject;
         }
@@ -70,7 +81,7 @@ public class ExternalProjectBuilderImpl implements ModelBuilderService {
             }
         }
         defaultExternalProject.setChildProjects(childProjects);
-        cache.put(project.getPath(), defaultExternalProject);
+        projectCache.putModel(modelName, defaultExternalProject);
 
         return defaultExternalProject;
     }
@@ -89,6 +100,8 @@ public class ExternalProjectBuilderImpl implements ModelBuilderService {
 
     public static Map<String, ExternalTask> getTasks(Project project) {
         Map<String, ExternalTask> result = new HashMap<>();
+        // description and group are known only after the task is configured, so all the tasks are realized here.
+        // Other model builders must look up the tasks they need via withType()/findByName() instead of iterating the container.
         for (Task task : project.getTasks()) {
             DefaultExternalTask externalTask = new DefaultExternalTask();
             externalTask.setName(task.getName());
@@ -102,10 +115,10 @@ public class ExternalProjectBuilderImpl implements ModelBuilderService {
 
     public static Map<String, ExternalSourceSet> getSourceSets(Project project) {
         Map<String, ExternalSourceSet> result = new HashMap<>();
-        if (!project.hasProperty("sourceSets") || !(project.property("sourceSets") instanceof SourceSetContainer)) {
+        SourceSetContainer sourceSets = ExtraModelBuilder.getProjectCache(project).getSourceSets();
+        if (sourceSets == null) {
             return result;
         }
-        SourceSetContainer sourceSets = (SourceSetContainer) project.property("sourceSets");
 
         Object[] resourcesFilters = getFilters(project, "processResources");
         List resourcesIncludes = (List) resourcesFilters[0];
@@ -186,85 +199,27 @@ public class ExternalProjectBuilderImpl implements ModelBuilderService {
         try {
             if (filterableTask instanceof ContentFilterable) {
                 // Check if getMainSpec method exists via reflection.
-                try {
-                    Method getMainSpec = filterableTask.getClass().getMethod("getMainSpec");
-                    if (getMainSpec != null) {
-                        Object mainSpec = getMainSpec.invoke(filterableTask);
-                        Field propertiesField = mainSpec.getClass().getField("properties");
-                        Object properties = propertiesField.get(mainSpec);
-                        Object copyActions = null;
-                        try {
-                            Field allCopyActionsField = properties.getClass().getField("allCopyActions");
-                            copyActions = allCopyActionsField.get(properties);
-                        }
-                        catch (NoSuchFieldException nsfe) {
-                            try {
-                                Field copyActionsField = properties.getClass().getField("copyActions");
-                                copyActions = copyActionsField.get(properties);
-                            }
-                            catch (NoSuchFieldException nsfe2) {
-                                // leave copyActions as null
-                            }
-                        }
-                        if (copyActions instanceof Iterable) {
-                            for (Object actionObj : (Iterable) copyActions) {
-                                try {
-                                    Field filterTypeField = actionObj.getClass().getDeclaredField("val$filterType");
-                                    Field propertiesField2 = actionObj.getClass().getDeclaredField("val$properties");
-                                    filterTypeField.setAccessible(true);
-                                    propertiesField2.setAccessible(true);
-                                    Class<?> filterType = (Class<?>) filterTypeField.get(actionObj);
-                                    String filterTypeName = filterType.getName();
-                                    DefaultExternalFilter filter = new DefaultExternalFilter();
-                                    filter.setFilterType(filterTypeName);
-                                    Object props = propertiesField2.get(actionObj);
-                                    if (props != null) {
-                                        String json = new GsonBuilder().create().toJson(props);
-                                        filter.setPropertiesAsJsonMap(json);
-                                    }
-                                    filterReaders.add(filter);
-                                }
-                                catch (NoSuchFieldException e) {
-                                    if ("RenamingCopyAction".equals(actionObj.getClass().getSimpleName())) {
-                                        try {
-                                            Field transformerField = actionObj.getClass().getDeclaredField("transformer");
-                                            transformerField.setAccessible(true);
-                                            Object transformer = transformerField.get(actionObj);
-                                            Field matcherField = transformer.getClass().getDeclaredField("matcher");
-                                            Field replacementField = transformer.getClass().getDeclaredField("replacement");
-                                            matcherField.setAccessible(true);
-                                            replacementField.setAccessible(true);
-                                            Object matcher = matcherField.get(transformer);
-                                            Object replacement = replacementField.get(transformer);
-                                            if (matcher != null && replacement != null) {
-                                                Method patternMethod = matcher.getClass().getMethod("pattern");
-                                                Object patternObj = patternMethod.invoke(matcher);
-                                                String pattern = patternObj != null ? patternObj.toString() : "";
-                                                String replacementStr = replacement.toString();
-                                                DefaultExternalFilter filter = new DefaultExternalFilter();
-                                                filter.setFilterType("RenamingCopyFilter");
-                                                if (!pattern.isEmpty() && !replacementStr.isEmpty()) {
-                                                    Map<String, String> map = new HashMap<>();
-                                                    map.put("pattern", pattern);
-                                                    map.put("replacement", replacementStr);
-                                                    String json = new GsonBuilder().create().toJson(map);
-                                                    filter.setPropertiesAsJsonMap(json);
-                                                    filterReaders.add(filter);
-                                                }
-                                            }
-                                        }
-                                        catch (Exception ex) {
-                                            // Ignore any exceptions for this action.
-                                        }
-                                    }
-                                }
+                MethodHandle getMainSpec = Accessors.findMethod(filterableTask.getClass(), "getMainSpec");
+                if (getMainSpec != null) {
+                    Object mainSpec = Accessors.invoke(getMainSpec, filterableTask);
+                    Object properties = Accessors.getField(mainSpec, "properties");
+                    Object copyActions = null;
+                    MethodHandle copyActionsGetter = Accessors.findField(properties.getClass(), "allCopyActions");
+                    if (copyActionsGetter == null) {
+                        copyActionsGetter = Accessors.findField(properties.getClass(), "copyActions");
+                    }
+                    if (copyActionsGetter != null) {
+                        copyActions = Accessors.invoke(copyActionsGetter, properties);
+                    }
+                    if (copyActions instanceof Iterable) {
+                        for (Object actionObj : (Iterable) copyActions) {
+                            ExternalFilter filter = getFilter(actionObj);
+                            if (filter != null) {
+                                filterReaders.add(filter);
                             }
                         }
                     }
                 }
-                catch (NoSuchMethodException nsme) {
-                    // getMainSpec not available; ignore.
-                }
             }
         }
         catch (Exception ignore) {
@@ -274,6 +229,66 @@ public class ExternalProjectBuilderImpl implements ModelBuilderService {
         return new Object[]{includes, excludes, filterReaders};
     }
 
+    private static ExternalFilter getFilter(Object actionObj) {
+        CopyActionLayout layout = ourCopyActionLayouts.get(actionObj.getClass());
+        if (layout.myFilterTypeGetter != null) {
+            Class<?> filterType = (Class<?>) Accessors.invoke(layout.myFilterTypeGetter, actionObj);
+            DefaultExternalFilter filter = new DefaultExternalFilter();
+            filter.setFilterType(filterType.getName());
+            Object props = Accessors.invoke(layout.myPropertiesGetter, actionObj);
+            if (props != null) {
+                filter.setPropertiesAsJsonMap(GSON.toJson(props));
+            }
+            return filter;
+        }
+
+        if (!layout.myRenaming) {
+            return null;
+        }
+        try {
+            Object transformer = Accessors.getDeclaredField(actionObj, "transformer");
+            Object matcher = Accessors.getDeclaredField(transformer, "matcher");
+            Object replacement = Accessors.getDeclaredField(transformer, "replacement");
+            if (matcher != null && replacement != null) {
+                Object patternObj = Accessors.invokeMethod(matcher, "pattern");
+                String pattern = patternObj != null ? patternObj.toString() : "";
+                String replacementStr = replacement.toString();
+                if (!pattern.isEmpty() && !replacementStr.isEmpty()) {
+                    DefaultExternalFilter filter = new DefaultExternalFilter();
+                    filter.setFilterType("RenamingCopyFilter");
+                    Map<String, String> map = new HashMap<>();
+                    map.put("pattern", pattern);
+                    map.put("replacement", replacementStr);
+                    filter.setPropertiesAsJsonMap(GSON.toJson(map));
+                    return filter;
+                }
+            }
+        }
+        catch (Exception ex) {
+            // Ignore any exceptions for this action.
+        }
+        return null;
+    }
+
+    /**
+     * Kind of the copy action class and accessors of its fields, computed once per class: the same gradle classes
+     * are met in every project.
+     */
+    private static final class CopyActionLayout {
+        private final MethodHandle myFilterTypeGetter;
+        private final MethodHandle myPropertiesGetter;
+        private final boolean myRenaming;
+
+        private CopyActionLayout(Class<?> actionClass) {
+            MethodHandle filterTypeGetter = Accessors.findDeclaredField(actionClass, "val$filterType");
+            MethodHandle propertiesGetter = Accessors.findDeclaredField(actionClass, "val$properties");
+            boolean filter = filterTypeGetter != null && propertiesGetter != null;
+            myFilterTypeGetter = filter ? filterTypeGetter : null;
+            myPropertiesGetter = filter ? propertiesGetter : null;
+            myRenaming = !filter && "RenamingCopyAction".equals(actionClass.getSimpleName());
+        }
+    }
+
     private static String wrap(Object o) {
         return o instanceof CharSequence ? o.toString() : "";
     }
@@ -17,20 +17,30 @@ package org.jetbrains.plugins.gradle.tooling.impl.builder;
 
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
-import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.artifacts.LenientConfiguration;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.result.ArtifactResult;
+import org.gradle.api.artifacts.result.ComponentArtifactsResult;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.component.Artifact;
+import org.gradle.api.specs.Specs;
+import org.gradle.jvm.JvmLibrary;
+import org.gradle.language.base.artifact.SourcesArtifact;
+import org.gradle.language.java.artifact.JavadocArtifact;
 import org.gradle.plugins.ide.idea.IdeaPlugin;
-import org.gradle.plugins.ide.idea.model.*;
+import org.gradle.plugins.ide.idea.model.IdeaModule;
 import org.gradle.util.GradleVersion;
 import org.jetbrains.plugins.gradle.tooling.model.BuildScriptClasspathModel;
-import org.jetbrains.plugins.gradle.tooling.model.ClasspathEntryModel;
 import org.jetbrains.plugins.gradle.tooling.impl.ErrorMessageBuilder;
 import org.jetbrains.plugins.gradle.tooling.impl.ModelBuilderService;
 import org.jetbrains.plugins.gradle.tooling.impl.internal.BuildScriptClasspathModelImpl;
 import org.jetbrains.plugins.gradle.tooling.impl.internal.ClasspathEntryModelImpl;
+import org.jetbrains.plugins.gradle.tooling.impl.internal.ExtraModelBuilder;
+import org.jetbrains.plugins.gradle.tooling.impl.internal.ProjectModelCache;
 
 import java.io.File;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Vladislav.Soroka
@@ -38,11 +48,7 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class ModelBuildScriptClasspathBuilderImpl implements ModelBuilderService {
 
-  private static final String COMPILE_SCOPE = "COMPILE";
-  private static final String PLUS_CONFIGURATION = "plus";
-  private static final String MINUS_CONFIGURATION = "minus";
   private static final String CLASSPATH_CONFIGURATION_NAME = "classpath";
-  private final Map<String, BuildScriptClasspathModelImpl> cache = new ConcurrentHashMap<String, BuildScriptClasspathModelImpl>();
 
   @Override
   public boolean canBuild(String modelName) {
@@ -51,71 +57,47 @@ public class ModelBuildScriptClasspathBuilderImpl implements ModelBuilderService
 
   @Override
   public Object buildAll(final String modelName, final Project project) {
-    BuildScriptClasspathModelImpl buildScriptClasspath = cache.get(project.getPath());
+    final ProjectModelCache projectCache = ExtraModelBuilder.getProjectCache(project);
+    BuildScriptClasspathModelImpl buildScriptClasspath = (BuildScriptClasspathModelImpl)projectCache.getModel(modelName);
     if (buildScriptClasspath != null) return buildScriptClasspath;
 
-    buildScriptClasspath = new BuildScriptClasspathModelImpl();
+    final IdeaPlugin ideaPlugin = project.getPlugins().getPlugin(IdeaPlugin.class);
+    BuildScriptClasspathModelImpl parentBuildScriptClasspath = null;
+    if (ideaPlugin != null && project.getParent() != null) {
+      // the classpath of the parent build script is available to the child one, it's shared instead of copied
+      parentBuildScriptClasspath = (BuildScriptClasspathModelImpl)buildAll(modelName, project.getParent());
+    }
+
+    buildScriptClasspath = new BuildScriptClasspathModelImpl(parentBuildScriptClasspath);
     final File gradleHomeDir = project.getGradle().getGradleHomeDir();
     buildScriptClasspath.setGradleHomeDir(gradleHomeDir);
     buildScriptClasspath.setGradleVersion(GradleVersion.current().getVersion());
 
-    final IdeaPlugin ideaPlugin = project.getPlugins().getPlugin(IdeaPlugin.class);
     if (ideaPlugin != null) {
-      Project parent = project.getParent();
-      if (parent != null) {
-        BuildScriptClasspathModelImpl parentBuildScriptClasspath = (BuildScriptClasspathModelImpl)buildAll(modelName, parent);
-        if (parentBuildScriptClasspath != null) {
-          for (ClasspathEntryModel classpathEntryModel : parentBuildScriptClasspath.getClasspath()) {
-            buildScriptClasspath.add(classpathEntryModel);
-          }
-        }
-      }
       Configuration classpathConfiguration = project.getBuildscript().getConfigurations().findByName(CLASSPATH_CONFIGURATION_NAME);
       if (classpathConfiguration == null) return null;
 
-      final Configuration configuration;
-      final IdeaModule ideaModule = ideaPlugin.getModel().getModule();
-      final ConfigurationContainer configurations = ideaModule.getProject().getConfigurations();
-
-      if (classpathConfiguration.getState() == Configuration.State.UNRESOLVED) {
-        configuration = classpathConfiguration;
-        configurations.add(configuration);
-      }
-      else {
-        configuration = configurations.maybeCreate(UUID.randomUUID().toString());
-        configuration.getDependencies().addAll(classpathConfiguration.getAllDependencies());
-        configuration.getArtifacts().addAll(classpathConfiguration.getAllArtifacts());
+      // the configuration is resolved already to compile the build script, so the result is taken from the gradle caches
+      LenientConfiguration resolved = classpathConfiguration.getResolvedConfiguration().getLenientConfiguration();
+      Map<File, ComponentIdentifier> components = new HashMap<File, ComponentIdentifier>();
+      for (ResolvedArtifact artifact : resolved.getArtifacts(Specs.SATISFIES_ALL)) {
+        components.put(artifact.getFile(), artifact.getId().getComponentIdentifier());
       }
 
-      Collection<Configuration> plusConfigurations = Collections.singletonList(configuration);
-
-      final Map<String, Map<String, Collection<Configuration>>> scopes =
-        new HashMap<String, Map<String, Collection<Configuration>>>(ideaModule.getScopes());
+      IdeaModule ideaModule = ideaPlugin.getModel().getModule();
+      Map<ComponentIdentifier, Set<String>> sources = new HashMap<ComponentIdentifier, Set<String>>();
+      Map<ComponentIdentifier, Set<String>> javadoc = new HashMap<ComponentIdentifier, Set<String>>();
+      resolveAuxiliaryArtifacts(project, new HashSet<ComponentIdentifier>(components.values()),
+                                ideaModule.isDownloadSources(), ideaModule.isDownloadJavadoc(), sources, javadoc);
 
-      Map<String, Map<String, Collection<Configuration>>> buildScriptScope = new HashMap<String, Map<String, Collection<Configuration>>>();
-      Map<String, Collection<Configuration>> plusConfiguration = new HashMap<String, Collection<Configuration>>();
-      plusConfiguration.put(PLUS_CONFIGURATION, plusConfigurations);
-      if (scopes.get(COMPILE_SCOPE) != null) {
-        plusConfiguration.put(MINUS_CONFIGURATION, scopes.get(COMPILE_SCOPE).get(PLUS_CONFIGURATION));
-      }
-      buildScriptScope.put(COMPILE_SCOPE, plusConfiguration);
-      ideaModule.setScopes(buildScriptScope);
-      final Set<Dependency> buildScriptDependencies = ideaModule.resolveDependencies();
-      for (Dependency dependency : buildScriptDependencies) {
-        if (dependency instanceof ModuleLibrary) {
-          ModuleLibrary moduleLibrary = (ModuleLibrary)dependency;
-          if (COMPILE_SCOPE.equals(moduleLibrary.getScope())) {
-            buildScriptClasspath.add(new ClasspathEntryModelImpl(
-              convert(moduleLibrary.getClasses()), convert(moduleLibrary.getSources()), convert(moduleLibrary.getJavadoc())));
-          }
-        }
+      for (File file : resolved.getFiles(Specs.SATISFIES_ALL)) {
+        ComponentIdentifier id = components.get(file);
+        buildScriptClasspath.add(new ClasspathEntryModelImpl(
+          Collections.singleton(file.getPath()), getPaths(sources, id), getPaths(javadoc, id)));
       }
-
-      ideaModule.setScopes(scopes);
-      configurations.remove(configuration);
     }
 
-    cache.put(project.getPath(), buildScriptClasspath);
+    projectCache.putModel(modelName, buildScriptClasspath);
     return buildScriptClasspath;
   }
 
@@ -127,11 +109,53 @@ public class ModelBuildScriptClasspathBuilderImpl implements ModelBuilderService
     ).withDescription("Unable to resolve additional buildscript classpath dependencies");
   }
 
-  private static Set<String> convert(Set<Path> paths) {
-    Set<String> result = new HashSet<String>(paths.size());
-    for (Path path : paths) {
-      result.add(path.getRelPath());
+  /**
+   * Resolves sources and javadoc of the build script dependencies against the build script repositories.
+   */
+  @SuppressWarnings("unchecked")
+  private static void resolveAuxiliaryArtifacts(Project project,
+                                                Set<ComponentIdentifier> components,
+                                                boolean downloadSources,
+                                                boolean downloadJavadoc,
+                                                Map<ComponentIdentifier, Set<String>> sources,
+                                                Map<ComponentIdentifier, Set<String>> javadoc) {
+    List<Class<? extends Artifact>> artifactTypes = new ArrayList<Class<? extends Artifact>>();
+    if (downloadSources) artifactTypes.add(SourcesArtifact.class);
+    if (downloadJavadoc) artifactTypes.add(JavadocArtifact.class);
+    if (artifactTypes.isEmpty() || components.isEmpty()) return;
+
+    Set<ComponentArtifactsResult> results = project.getBuildscript().getDependencies().createArtifactResolutionQuery()
+      .forComponents(components)
+      .withArtifacts(JvmLibrary.class, artifactTypes.toArray(new Class[0]))
+      .execute()
+      .getResolvedComponents();
+    for (ComponentArtifactsResult result : results) {
+      if (downloadSources) {
+        collectFiles(result, SourcesArtifact.class, sources);
+      }
+      if (downloadJavadoc) {
+        collectFiles(result, JavadocArtifact.class, javadoc);
+      }
+    }
+  }
+
+  private static void collectFiles(ComponentArtifactsResult result,
+                                   Class<? extends Artifact> artifactType,
+                                   Map<ComponentIdentifier, Set<String>> files) {
+    for (ArtifactResult artifactResult : result.getArtifacts(artifactType)) {
+      if (artifactResult instanceof ResolvedArtifactResult) {
+        Set<String> paths = files.get(result.getId());
+        if (paths == null) {
+          paths = new HashSet<String>();
+          files.put(result.getId(), paths);
+        }
+        paths.add(((ResolvedArtifactResult)artifactResult).getFile().getPath());
+      }
     }
-    return result;
+  }
+
+  private static Set<String> getPaths(Map<ComponentIdentifier, Set<String>> files, ComponentIdentifier id) {
+    Set<String> paths = id == null ? null : files.get(id);
+    return paths == null ? Collections.<String>emptySet() : paths;
   }
 }
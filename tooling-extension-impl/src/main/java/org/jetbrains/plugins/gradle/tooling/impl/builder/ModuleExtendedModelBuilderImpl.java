@@ -17,30 +17,24 @@ package org.jetbrains.plugins.gradle.tooling.impl.builder;
 
 import consulo.gradle.tooling.impl.buildler.util.ReflectionMethod;
 import org.gradle.api.Project;
-import org.gradle.api.Task;
-import org.gradle.api.file.RegularFile;
-import org.gradle.api.plugins.JavaPluginExtension;
-import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.SourceSetOutput;
-import org.gradle.api.tasks.bundling.AbstractArchiveTask;
-import org.gradle.api.tasks.bundling.Jar;
-import org.gradle.api.tasks.testing.Test;
 import org.gradle.plugins.ide.idea.IdeaPlugin;
 import org.gradle.plugins.ide.idea.model.IdeaModel;
 import org.gradle.plugins.ide.idea.model.IdeaModule;
 import org.gradle.tooling.model.idea.IdeaContentRoot;
 import org.jetbrains.plugins.gradle.tooling.impl.ErrorMessageBuilder;
 import org.jetbrains.plugins.gradle.tooling.impl.ModelBuilderService;
+import org.jetbrains.plugins.gradle.tooling.impl.internal.ExtraModelBuilder;
 import org.jetbrains.plugins.gradle.tooling.impl.internal.IdeaCompilerOutputImpl;
 import org.jetbrains.plugins.gradle.tooling.impl.internal.IdeaContentRootImpl;
 import org.jetbrains.plugins.gradle.tooling.impl.internal.IdeaSourceDirectoryImpl;
 import org.jetbrains.plugins.gradle.tooling.impl.internal.ModuleExtendedModelImpl;
+import org.jetbrains.plugins.gradle.tooling.impl.internal.ProjectModelCache;
 import org.jetbrains.plugins.gradle.tooling.model.ModuleExtendedModel;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.*;
 
 /**
@@ -48,29 +42,9 @@ import java.util.*;
  * @since 11/5/13
  */
 public class ModuleExtendedModelBuilderImpl implements ModelBuilderService {
-    private static final ReflectionMethod<File, Test> Test__getTestClassesDir =
-        new ReflectionMethod<>(Test.class, "getTestClassesDir");
-    private static final ReflectionMethod<Iterable<File>, Test> Test__getTestClassesDirs =
-        new ReflectionMethod<>(Test.class, "getTestClassesDirs");
-
-    private static final ReflectionMethod<File, SourceSetOutput> SourceSetOutput__getClassesDir =
-        new ReflectionMethod<>(SourceSetOutput.class, "getClassesDir");
-    private static final ReflectionMethod<Iterable<File>, SourceSetOutput> SourceSetOutput__getClassesDirs =
-        new ReflectionMethod<>(SourceSetOutput.class, "getClassesDirs");
-
-    private static final ReflectionMethod<SourceSetContainer, JavaPluginExtension> JavaPluginExtension__getSourceSets =
-        new ReflectionMethod<>(JavaPluginExtension.class, "getSourceSets");
-
     private static final ReflectionMethod<Iterable<File>, IdeaModule> IdeaModule__getTestSources =
         new ReflectionMethod<>(IdeaModule.class, "getTestSources");
 
-    private static final ReflectionMethod<File, AbstractArchiveTask> AbstractArchiveTask_getArchivePath=
-        new ReflectionMethod<>(AbstractArchiveTask.class, "getArchivePath");
-
-    private static final ReflectionMethod<Provider<RegularFile>, AbstractArchiveTask> AbstractArchiveTask_getArchiveFile =
-        new ReflectionMethod<>(AbstractArchiveTask.class, "getArchiveFile");
-
-    private static final String SOURCE_SETS_PROPERTY = "sourceSets";
     private static final String TEST_SRC_DIRS_PROPERTY = "testSrcDirs";
 
     @Override
@@ -79,16 +53,7 @@ public class ModuleExtendedModelBuilderImpl implements ModelBuilderService {
     }
 
     public static SourceSetContainer getSourceSetContainer(Project project) {
-        try {
-            JavaPluginExtension pluginExtension = project.getExtensions().getByType(JavaPluginExtension.class);
-            if (pluginExtension != null) {
-                return JavaPluginExtension__getSourceSets.invoke(pluginExtension);
-            }
-        }
-        catch (Throwable ignored) {
-        }
-
-        return null;
+        return ProjectModelCache.findSourceSetContainer(project);
     }
 
     @Override
@@ -99,91 +64,47 @@ public class ModuleExtendedModelBuilderImpl implements ModelBuilderService {
         final File buildDir = project.getBuildDir();
 
         final ModuleExtendedModelImpl moduleVersionModel = new ModuleExtendedModelImpl(moduleName, moduleGroup, moduleVersion, buildDir);
+        final ProjectModelCache projectCache = ExtraModelBuilder.getProjectCache(project);
 
-        final List<File> artifacts = new ArrayList<>();
-        for (Task task : project.getTasks()) {
-            if (task instanceof Jar) {
-                Jar jar = (Jar) task;
-
-                File jarFile = AbstractArchiveTask_getArchivePath.invoke(jar);
-                if (jarFile != null) {
-                    artifacts.add(jarFile);
-                }
-
-                Provider<RegularFile> provider = AbstractArchiveTask_getArchiveFile.invoke(jar);
-                if (provider != null) {
-                    RegularFile file = provider.getOrNull();
-                    if (file != null) {
-                        artifacts.add(file.getAsFile());
-                    }
-                }
-            }
-        }
-
-        moduleVersionModel.setArtifacts(artifacts);
+        moduleVersionModel.setArtifacts(new ArrayList<>(projectCache.getArchives()));
 
         final Set<String> sourceDirectories = new HashSet<>();
         final Set<String> testDirectories = new HashSet<>();
         final Set<String> resourceDirectories = new HashSet<>();
         final Set<String> testResourceDirectories = new HashSet<>();
 
-        final List<File> testClassesDirs = new ArrayList<>();
-        for (Task task : project.getTasks()) {
-            if (task instanceof Test) {
-                Test test = (Test) task;
-
-                File testDir = Test__getTestClassesDir.invoke(test);
-                if (testDir != null) {
-                    testClassesDirs.add(testDir);
-                }
-
-                Iterable<File> files = Test__getTestClassesDirs.invoke(test);
-                if (files != null) {
-                    for (File file : files) {
-                        addFilePath(testDirectories, file);
-                    }
-                }
-            }
+        for (File file : projectCache.getTestClassesDirsFiles()) {
+            addFilePath(projectCache, testDirectories, file);
         }
 
         IdeaCompilerOutputImpl compilerOutput = new IdeaCompilerOutputImpl();
 
-        SourceSetContainer sourceSetContainer = getSourceSetContainer(project);
-        if (sourceSetContainer == null) {
-            if (project.hasProperty(SOURCE_SETS_PROPERTY)) {
-                Object sourceSets = project.property(SOURCE_SETS_PROPERTY);
-                if (sourceSets instanceof SourceSetContainer) {
-                    sourceSetContainer = (SourceSetContainer) sourceSets;
-                }
-            }
-        }
-
+        SourceSetContainer sourceSetContainer = projectCache.getSourceSets();
         if (sourceSetContainer != null) {
             for (SourceSet sourceSet : sourceSetContainer) {
                 SourceSetOutput output = sourceSet.getOutput();
 
                 if (SourceSet.TEST_SOURCE_SET_NAME.equals(sourceSet.getName())) {
-                    for (File file : getClassesDirs(output)) {
+                    for (File file : projectCache.getClassesDirs(sourceSet)) {
                         compilerOutput.setTestClassesDir(file);
                     }
                     compilerOutput.setTestResourcesDir(output.getResourcesDir());
                 }
 
                 if (SourceSet.MAIN_SOURCE_SET_NAME.equals(sourceSet.getName())) {
-                    for (File file : getClassesDirs(output)) {
+                    for (File file : projectCache.getClassesDirs(sourceSet)) {
                         compilerOutput.setMainClassesDir(file);
                     }
                     compilerOutput.setMainResourcesDir(output.getResourcesDir());
                 }
 
+                boolean isTestDir = isTestDir(projectCache, sourceSet);
                 for (File javaSrcDir : sourceSet.getAllJava().getSrcDirs()) {
-                    boolean isTestDir = isTestDir(sourceSet, testClassesDirs);
-                    addFilePath(isTestDir ? testDirectories : sourceDirectories, javaSrcDir);
+                    addFilePath(projectCache, isTestDir ? testDirectories : sourceDirectories, javaSrcDir);
                 }
 
                 for (File resourcesSrcDir : sourceSet.getResources().getSrcDirs()) {
-                    boolean isTestDir = isTestDir(sourceSet, testClassesDirs);
-                    addFilePath(isTestDir ? testResourceDirectories : resourceDirectories, resourcesSrcDir);
+                    addFilePath(projectCache, isTestDir ? testResourceDirectories : resourceDirectories, resourcesSrcDir);
                 }
             }
         }
@@ -247,7 +168,10 @@ public class ModuleExtendedModelBuilderImpl implements ModelBuilderService {
         ).withDescription("Unable to resolve all content root directories");
     }
 
-    private static boolean isTestDir(SourceSet sourceSet, List<File> testClassesDirs) {
+    /**
+     * Source set is considered as a test one if its classes dir is a test classes dir or contains one.
+     */
+    private static boolean isTestDir(ProjectModelCache projectCache, SourceSet sourceSet) {
         if (SourceSet.TEST_SOURCE_SET_NAME.equals(sourceSet.getName())) {
             return true;
         }
@@ -255,42 +179,16 @@ public class ModuleExtendedModelBuilderImpl implements ModelBuilderService {
             return false;
         }
 
-        Iterable<File> classesDirs = getClassesDirs(sourceSet.getOutput());
+        Iterable<File> classesDirs = projectCache.getClassesDirs(sourceSet);
         Iterator<File> iterator = classesDirs.iterator();
         File sourceSetClassesDir = iterator.hasNext() ? iterator.next() : null;
-
-        for (File testClassesDir : testClassesDirs) {
-            do {
-                if (sourceSetClassesDir.getPath().equals(testClassesDir.getPath())) {
-                    return true;
-                }
-            }
-            while ((testClassesDir = testClassesDir.getParentFile()) != null);
-        }
-
-        return false;
+        return sourceSetClassesDir != null && projectCache.getTestClassesDirsWithParents().contains(sourceSetClassesDir.getPath());
     }
 
-    private static Iterable<File> getClassesDirs(SourceSetOutput output) {
-        File file = SourceSetOutput__getClassesDir.invoke(output);
-        if (file != null) {
-            return Collections.singleton(file);
-        }
-
-        Iterable<File> files = SourceSetOutput__getClassesDirs.invoke(output);
-        if (files != null) {
-            return files;
-        }
-        return Collections.emptyList();
-    }
-
-    private static void addFilePath(Set<String> filePathSet, Object file) {
-        if (file instanceof File) {
-            try {
-                filePathSet.add(((File) file).getCanonicalPath());
-            }
-            catch (IOException ignore) {
-            }
+    private static void addFilePath(ProjectModelCache projectCache, Set<String> filePathSet, File file) {
+        String canonicalPath = projectCache.getCanonicalPath(file);
+        if (canonicalPath != null) {
+            filePathSet.add(canonicalPath);
         }
     }
 
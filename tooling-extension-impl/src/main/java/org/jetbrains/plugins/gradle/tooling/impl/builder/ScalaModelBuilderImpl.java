@@ -16,7 +16,6 @@
 package org.jetbrains.plugins.gradle.tooling.impl.builder;
 
 import org.gradle.api.Project;
-import org.gradle.api.Task;
 import org.gradle.api.plugins.scala.ScalaPlugin;
 import org.gradle.api.tasks.scala.ScalaCompile;
 import org.gradle.api.tasks.scala.ScalaCompileOptions;
@@ -50,16 +49,14 @@ public class ScalaModelBuilderImpl implements ModelBuilderService {
 
         final ScalaModelImpl scalaModel = new ScalaModelImpl();
 
-        for (Task task : project.getTasks()) {
-            if (task instanceof ScalaCompile && COMPILE_SCALA_TASK.equals(task.getName())) {
-                ScalaCompile scalaCompile = (ScalaCompile) task;
-                scalaModel.setScalaClasspath(scalaCompile.getScalaClasspath().getFiles());
-                scalaModel.setZincClasspath(scalaCompile.getZincClasspath().getFiles());
-                scalaModel.setScalaCompileOptions(create(scalaCompile.getScalaCompileOptions()));
-                scalaModel.setTargetCompatibility(scalaCompile.getTargetCompatibility());
-                scalaModel.setSourceCompatibility(scalaCompile.getSourceCompatibility());
-                break;
-            }
+        // realize only the compile task itself
+        ScalaCompile scalaCompile = project.getTasks().withType(ScalaCompile.class).findByName(COMPILE_SCALA_TASK);
+        if (scalaCompile != null) {
+            scalaModel.setScalaClasspath(scalaCompile.getScalaClasspath().getFiles());
+            scalaModel.setZincClasspath(scalaCompile.getZincClasspath().getFiles());
+            scalaModel.setScalaCompileOptions(create(scalaCompile.getScalaCompileOptions()));
+            scalaModel.setTargetCompatibility(scalaCompile.getTargetCompatibility());
+            scalaModel.setSourceCompatibility(scalaCompile.getSourceCompatibility());
         }
 
         return scalaModel;
@@ -15,9 +15,9 @@
  */
 package org.jetbrains.plugins.gradle.tooling.impl.builder;
 
+import consulo.gradle.tooling.impl.buildler.util.Accessors;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
-import org.gradle.api.Task;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.file.FileVisitor;
 import org.gradle.api.java.archives.Manifest;
@@ -32,12 +32,10 @@ import org.jetbrains.plugins.gradle.tooling.impl.internal.web.WebResourceImpl;
 import org.jetbrains.plugins.gradle.tooling.web.WebConfiguration;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.StringWriter;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.lang.invoke.MethodHandle;
+import java.util.*;
 
 public class WarModelBuilderImpl implements ModelBuilderService {
 
@@ -66,159 +64,102 @@ public class WarModelBuilderImpl implements ModelBuilderService {
 
         List<WebConfiguration.WarModel> warModels = new ArrayList<>();
 
-        // Iterate through each task in the project
-        for (Task task : project.getTasks()) {
-            if (task instanceof War) {
-                final War warTask = (War) task;
-                final WarModelImpl warModel = new WarModelImpl(warTask.getArchiveName(), webAppDirName, webAppDir);
-                final List<WebConfiguration.WebResource> webResources = new ArrayList<>();
-
-                warModel.setWebXml(warTask.getWebXml());
-                warTask.getRootSpec().setIncludeEmptyDirs(true);
-
-                // Walk the rootSpec; using an Action with reflection to emulate Groovy's dynamic behavior.
-                warTask.getRootSpec().walk(new Action<Object>() {
-                    @Override
-                    public void execute(Object resolver) {
-                        try {
-                            // If method setIncludeEmptyDirs(boolean) exists, invoke it.
-                            try {
-                                Method setIncludeEmptyDirs = resolver.getClass().getMethod("setIncludeEmptyDirs", boolean.class);
-                                if (setIncludeEmptyDirs != null) {
-                                    setIncludeEmptyDirs.invoke(resolver, true);
-                                }
-                            }
-                            catch (NoSuchMethodException nsme) {
-                                // Method not present – ignore.
-                            }
+        // Iterate through war tasks only, so other lazily registered tasks are not realized
+        for (final War warTask : project.getTasks().withType(War.class)) {
+            final WarModelImpl warModel = new WarModelImpl(warTask.getArchiveName(), webAppDirName, webAppDir);
+            final List<WebConfiguration.WebResource> webResources = new ArrayList<>();
 
-                            // Check that getDestPath() and getSource() methods exist.
-                            boolean hasGetDestPath = hasMethod(resolver, "getDestPath");
-                            boolean hasGetSource = hasMethod(resolver, "getSource");
-                            if (!hasGetDestPath || !hasGetSource) {
-                                throw new RuntimeException(GradleVersion.current() + " is not supported by web artifact importer");
-                            }
+            warModel.setWebXml(warTask.getWebXml());
+            warTask.getRootSpec().setIncludeEmptyDirs(true);
 
-                            // Retrieve relativePath from resolver.destPath.pathString
-                            String relativePath;
-                            try {
-                                Method getDestPathMethod = resolver.getClass().getMethod("getDestPath");
-                                Object destPath = getDestPathMethod.invoke(resolver);
-                                Method getPathStringMethod = destPath.getClass().getMethod("getPathString");
-                                relativePath = (String) getPathStringMethod.invoke(destPath);
-                            }
-                            catch (Exception e) {
-                                throw new RuntimeException(e);
-                            }
+            // Walk the rootSpec; using an Action with reflection to emulate Groovy's dynamic behavior.
+            warTask.getRootSpec().walk(new Action<Object>() {
+                @Override
+                public void execute(Object resolver) {
+                    // If method setIncludeEmptyDirs(boolean) exists, invoke it.
+                    MethodHandle setIncludeEmptyDirs = Accessors.findMethod(resolver.getClass(), "setIncludeEmptyDirs", boolean.class);
+                    if (setIncludeEmptyDirs != null) {
+                        Accessors.invoke(setIncludeEmptyDirs, resolver, true);
+                    }
 
-                            // Determine sourcePaths dynamically.
-                            Object sourcePaths = null;
-                            try {
-                                Method getSourcePathsMethod = resolver.getClass().getMethod("getSourcePaths");
-                                sourcePaths = getSourcePathsMethod.invoke(resolver);
-                            }
-                            catch (NoSuchMethodException e) {
-                                try {
-                                    Field sourcePathsField = resolver.getClass().getField("sourcePaths");
-                                    sourcePaths = sourcePathsField.get(resolver);
-                                }
-                                catch (Exception e2) {
-                                    try {
-                                        Field this$0Field = resolver.getClass().getField("this$0");
-                                        Object parent = this$0Field.get(resolver);
-                                        try {
-                                            Method getSourcePathsMethod2 = parent.getClass().getMethod("getSourcePaths");
-                                            sourcePaths = getSourcePathsMethod2.invoke(parent);
-                                        }
-                                        catch (NoSuchMethodException e3) {
-                                            Field sourcePathsField2 = parent.getClass().getField("sourcePaths");
-                                            sourcePaths = sourcePathsField2.get(parent);
-                                        }
-                                    }
-                                    catch (Exception e3) {
-                                        // Leave sourcePaths as null if not found.
-                                    }
-                                }
-                            }
+                    // Check that getDestPath() and getSource() methods exist.
+                    MethodHandle getDestPath = Accessors.findMethod(resolver.getClass(), "getDestPath");
+                    MethodHandle getSource = Accessors.findMethod(resolver.getClass(), "getSource");
+                    if (getDestPath == null || getSource == null) {
+                        throw new RuntimeException(GradleVersion.current() + " is not supported by web artifact importer");
+                    }
 
-                            if (sourcePaths != null && sourcePaths instanceof Collection) {
-                                @SuppressWarnings("unchecked")
-                                Collection<Object> sourcePathsCol = (Collection<Object>) sourcePaths;
-                                List<Object> flatPaths = flatten(sourcePathsCol);
-                                for (Object pathObj : flatPaths) {
-                                    if (pathObj instanceof String) {
-                                        String pathStr = (String) pathObj;
-                                        File file = new File(warTask.getProject().getProjectDir(), pathStr);
-                                        addPath(webResources, relativePath, "", file);
-                                    }
-                                }
-                            }
+                    // Retrieve relativePath from resolver.destPath.pathString
+                    final String relativePath;
+                    try {
+                        Object destPath = Accessors.invoke(getDestPath, resolver);
+                        relativePath = (String) Accessors.invokeMethod(destPath, "getPathString");
+                    }
+                    catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
 
-                            // Get the source and invoke its visit(FileVisitor) method.
-                            Object source;
-                            try {
-                                Method getSourceMethod = resolver.getClass().getMethod("getSource");
-                                source = getSourceMethod.invoke(resolver);
-                            }
-                            catch (Exception e) {
-                                throw new RuntimeException(e);
-                            }
+                    List<Object> flatPaths = null;
+                    Object sourcePaths = getSourcePaths(resolver);
+                    if (sourcePaths instanceof Collection) {
+                        @SuppressWarnings("unchecked")
+                        Collection<Object> sourcePathsCol = (Collection<Object>) sourcePaths;
+                        flatPaths = flatten(sourcePathsCol);
+                    }
 
-                            // Invoke the visit method on the source passing a FileVisitor instance.
-                            try {
-                                Method visitMethod = source.getClass().getMethod("visit", FileVisitor.class);
-                                visitMethod.invoke(source, new FileVisitor() {
-                                    @Override
-                                    public void visitDir(FileVisitDetails dirDetails) {
-                                        try {
-                                            addPath(webResources, getRelativePath(resolver), dirDetails.getPath(), dirDetails.getFile());
-                                        }
-                                        catch (Exception ignore) {
-                                        }
-                                    }
-
-                                    @Override
-                                    public void visitFile(FileVisitDetails fileDetails) {
-                                        try {
-                                            File xmlFile = warTask.getWebXml();
-                                            if (xmlFile == null || !fileDetails.getFile().getCanonicalPath().equals(xmlFile.getCanonicalPath())) {
-                                                addPath(webResources, getRelativePath(resolver), fileDetails.getPath(), fileDetails.getFile());
-                                            }
-                                        }
-                                        catch (Exception ignore) {
-                                        }
-                                    }
-                                });
-                            }
-                            catch (Exception e) {
-                                throw new RuntimeException(e);
+                    // Report source directories with the patterns of the spec instead of every file inside them,
+                    // unless the spec renames or filters files in the way patterns can't express.
+                    if (flatPaths != null && addDirectories(webResources, warTask, resolver, relativePath, flatPaths)) {
+                        return;
+                    }
+
+                    if (flatPaths != null) {
+                        for (Object pathObj : flatPaths) {
+                            if (pathObj instanceof String) {
+                                String pathStr = (String) pathObj;
+                                File file = new File(warTask.getProject().getProjectDir(), pathStr);
+                                addPath(webResources, relativePath, "", file);
                             }
                         }
-                        catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
                     }
 
-                    // Helper method to retrieve relativePath from the resolver via reflection.
-                    private String getRelativePath(Object resolver) throws Exception {
-                        Method getDestPathMethod = resolver.getClass().getMethod("getDestPath");
-                        Object destPath = getDestPathMethod.invoke(resolver);
-                        Method getPathStringMethod = destPath.getClass().getMethod("getPathString");
-                        return (String) getPathStringMethod.invoke(destPath);
+                    // Get the source and invoke its visit(FileVisitor) method.
+                    Object source = Accessors.invoke(getSource, resolver);
+                    MethodHandle visit = Accessors.findMethod(source.getClass(), "visit", FileVisitor.class);
+                    if (visit == null) {
+                        throw new RuntimeException(GradleVersion.current() + " is not supported by web artifact importer");
                     }
-                });
-
-                warModel.setWebResources(webResources);
-                warModel.setClasspath(warTask.getClasspath().getFiles());
+                    Accessors.invoke(visit, source, new FileVisitor() {
+                        @Override
+                        public void visitDir(FileVisitDetails dirDetails) {
+                            addPath(webResources, relativePath, dirDetails.getPath(), dirDetails.getFile());
+                        }
 
-                Manifest manifest = warTask.getManifest();
-                if (manifest != null) {
-                    StringWriter writer = new StringWriter();
-                    manifest.writeTo(writer);
-                    warModel.setManifestContent(writer.toString());
+                        @Override
+                        public void visitFile(FileVisitDetails fileDetails) {
+                            try {
+                                File xmlFile = warTask.getWebXml();
+                                if (xmlFile == null || !fileDetails.getFile().getCanonicalPath().equals(xmlFile.getCanonicalPath())) {
+                                    addPath(webResources, relativePath, fileDetails.getPath(), fileDetails.getFile());
+                                }
+                            }
+                            catch (Exception ignore) {
+                            }
+                        }
+                    });
                 }
-                warModels.add(warModel);
+            });
+
+            warModel.setWebResources(webResources);
+            warModel.setClasspath(warTask.getClasspath().getFiles());
+
+            Manifest manifest = warTask.getManifest();
+            if (manifest != null) {
+                StringWriter writer = new StringWriter();
+                manifest.writeTo(writer);
+                warModel.setManifestContent(writer.toString());
             }
+            warModels.add(warModel);
         }
 
         return new WebConfigurationImpl(warModels);
@@ -230,6 +171,104 @@ public class WarModelBuilderImpl implements ModelBuilderService {
             .withDescription("Web Facets/Artifacts will not be configured");
     }
 
+    /**
+     * Adds a resource per source directory of the copy spec resolver, the content of the directory is described by the spec
+     * patterns. Source files are added as is.
+     *
+     * @return <code>false</code> if the spec can't be represented by directories (the spec has copy actions, include or
+     * exclude specs, or sources other than plain files and paths), the files of such spec must be enumerated one by one
+     */
+    private static boolean addDirectories(List<WebConfiguration.WebResource> webResources,
+                                          War warTask,
+                                          Object resolver,
+                                          String relativePath,
+                                          List<Object> sourcePaths) {
+        Object copyActions = invokeIfExists(resolver, "getAllCopyActions");
+        Object includeSpecs = invokeIfExists(resolver, "getAllIncludeSpecs");
+        Object excludeSpecs = invokeIfExists(resolver, "getAllExcludeSpecs");
+        Object includes = invokeIfExists(resolver, "getAllIncludes");
+        Object excludes = invokeIfExists(resolver, "getAllExcludes");
+        if (!isEmptyCollection(copyActions) || !isEmptyCollection(includeSpecs) || !isEmptyCollection(excludeSpecs) ||
+            !(includes instanceof Collection) || !(excludes instanceof Collection)) {
+            return false;
+        }
+        List<File> files = new ArrayList<File>(sourcePaths.size());
+        for (Object path : sourcePaths) {
+            if (!(path instanceof File) && !(path instanceof String)) {
+                // file trees, providers, closures and callables may resolve to files at any depth of a tree, their relative
+                // paths are known to the visitor only
+                return false;
+            }
+            files.add(warTask.getProject().file(path));
+        }
+
+        Set<String> includePatterns = toStrings((Collection<?>) includes);
+        Set<String> excludePatterns = toStrings((Collection<?>) excludes);
+        if (!includePatterns.isEmpty() || !excludePatterns.isEmpty()) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    // patterns are matched against the name of the source file
+                    return false;
+                }
+            }
+        }
+
+        File webXml = warTask.getWebXml();
+        for (File file : files) {
+            if (file.isFile()) {
+                addPath(webResources, relativePath, file.getName(), file);
+                continue;
+            }
+
+            Set<String> dirExcludes = excludePatterns;
+            String webXmlPath = webXml == null ? null : getRelativePath(file, webXml);
+            if (webXmlPath != null) {
+                // web.xml is copied by its own spec
+                dirExcludes = new LinkedHashSet<String>(excludePatterns);
+                dirExcludes.add(webXmlPath);
+            }
+            webResources.add(new WebResourceImpl(relativePath == null ? "" : relativePath, "", file, includePatterns, dirExcludes));
+        }
+        return true;
+    }
+
+    private static Object invokeIfExists(Object target, String methodName) {
+        MethodHandle method = Accessors.findMethod(target.getClass(), methodName);
+        return method == null ? null : Accessors.invoke(method, target);
+    }
+
+    private static boolean isEmptyCollection(Object collection) {
+        return collection instanceof Collection && ((Collection<?>) collection).isEmpty();
+    }
+
+    private static Set<String> toStrings(Collection<?> patterns) {
+        if (patterns.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<String>();
+        for (Object pattern : patterns) {
+            result.add(String.valueOf(pattern));
+        }
+        return result;
+    }
+
+    /**
+     * @return path of the file relative to the directory with '/' separators, <code>null</code> if the file is not under the directory
+     */
+    private static String getRelativePath(File dir, File file) {
+        try {
+            String dirPath = dir.getCanonicalPath();
+            String filePath = file.getCanonicalPath();
+            if (filePath.length() > dirPath.length() + 1 && filePath.startsWith(dirPath) &&
+                filePath.charAt(dirPath.length()) == File.separatorChar) {
+                return filePath.substring(dirPath.length() + 1).replace(File.separatorChar, '/');
+            }
+        }
+        catch (IOException ignore) {
+        }
+        return null;
+    }
+
     /**
      * Helper method to add a web resource.
      */
@@ -242,15 +281,29 @@ public class WarModelBuilderImpl implements ModelBuilderService {
     }
 
     /**
-     * Checks if the given object has a public method with the specified name and no parameters (or matching parameters if provided).
+     * Determines source paths of the copy spec resolver, their location differs between gradle versions.
      */
-    private static boolean hasMethod(Object obj, String methodName, Class<?>... parameterTypes) {
+    private static Object getSourcePaths(Object resolver) {
+        MethodHandle getSourcePaths = Accessors.findMethod(resolver.getClass(), "getSourcePaths");
+        if (getSourcePaths != null) {
+            return Accessors.invoke(getSourcePaths, resolver);
+        }
         try {
-            obj.getClass().getMethod(methodName, parameterTypes);
-            return true;
+            return Accessors.getField(resolver, "sourcePaths");
         }
-        catch (NoSuchMethodException e) {
-            return false;
+        catch (Exception e) {
+            try {
+                Object parent = Accessors.getField(resolver, "this$0");
+                MethodHandle parentGetSourcePaths = Accessors.findMethod(parent.getClass(), "getSourcePaths");
+                if (parentGetSourcePaths != null) {
+                    return Accessors.invoke(parentGetSourcePaths, parent);
+                }
+                return Accessors.getField(parent, "sourcePaths");
+            }
+            catch (Exception e2) {
+                // Leave sourcePaths as null if not found.
+                return null;
+            }
         }
     }
 
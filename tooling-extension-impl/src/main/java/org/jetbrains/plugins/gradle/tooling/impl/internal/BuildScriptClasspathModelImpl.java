@@ -30,6 +30,8 @@ import java.util.List;
  */
 public class BuildScriptClasspathModelImpl implements BuildScriptClasspathModel {
 
+    private final BuildScriptClasspathModelImpl myParent;
+
     private final List<ClasspathEntryModel> myClasspathEntries;
 
     private File gradleHomeDir;
@@ -37,12 +39,32 @@ public class BuildScriptClasspathModelImpl implements BuildScriptClasspathModel
     private String myGradleVersion;
 
     public BuildScriptClasspathModelImpl() {
+        this(null);
+    }
+
+    /**
+     * @param parent classpath of the parent project build script, its entries precede the own entries of the model
+     */
+    public BuildScriptClasspathModelImpl(BuildScriptClasspathModelImpl parent) {
+        myParent = parent;
         myClasspathEntries = new ArrayList<ClasspathEntryModel>();
     }
 
     @Override
     public DomainObjectSet<? extends ClasspathEntryModel> getClasspath() {
-        return ImmutableDomainObjectSet.of(myClasspathEntries);
+        if (myParent == null) {
+            return ImmutableDomainObjectSet.of(myClasspathEntries);
+        }
+        List<ClasspathEntryModel> entries = new ArrayList<ClasspathEntryModel>();
+        collectEntries(entries);
+        return ImmutableDomainObjectSet.of(entries);
+    }
+
+    private void collectEntries(List<ClasspathEntryModel> entries) {
+        if (myParent != null) {
+            myParent.collectEntries(entries);
+        }
+        entries.addAll(myClasspathEntries);
     }
 
     public void setGradleHomeDir(File file) {
@@ -22,7 +22,8 @@ import org.jetbrains.plugins.gradle.tooling.impl.ErrorMessageBuilder;
 import org.jetbrains.plugins.gradle.tooling.impl.ModelBuilderService;
 import org.jetbrains.plugins.gradle.tooling.impl.annotation.TargetVersions;
 
-import java.util.ServiceLoader;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Vladislav.Soroka
@@ -31,44 +32,92 @@ import java.util.ServiceLoader;
 @SuppressWarnings("UnusedDeclaration")
 public class ExtraModelBuilder implements ToolingModelBuilder {
     private static final String RANGE_TOKEN = " <=> ";
-    private static ServiceLoader<ModelBuilderService> buildersLoader =
-        ServiceLoader.load(ModelBuilderService.class, ExtraModelBuilder.class.getClassLoader());
+    private static final List<ModelBuilderService> ourBuilders = loadBuilders();
+    /**
+     * Builders dispatch tables by gradle version, a builder instance is registered for every project of the build.
+     */
+    private static final ConcurrentHashMap<GradleVersion, Dispatcher> ourDispatchers = new ConcurrentHashMap<GradleVersion, Dispatcher>();
+    /**
+     * {@link ProjectModelCache} of the projects, weakly keyed so the cache lives exactly as long as the project and is not
+     * visible to the build scripts.
+     */
+    private static final Map<Project, ProjectModelCache> ourProjectCaches =
+        Collections.synchronizedMap(new WeakHashMap<Project, ProjectModelCache>());
 
     private final GradleVersion myCurrentGradleVersion;
+    private final Dispatcher myDispatcher;
 
     public ExtraModelBuilder() {
-        this.myCurrentGradleVersion = GradleVersion.current();
+        this(GradleVersion.current());
     }
 
     public ExtraModelBuilder(GradleVersion gradleVersion) {
         this.myCurrentGradleVersion = gradleVersion;
+        Dispatcher dispatcher = ourDispatchers.get(gradleVersion);
+        if (dispatcher == null) {
+            dispatcher = new Dispatcher(getMatchingBuilders());
+            Dispatcher previous = ourDispatchers.putIfAbsent(gradleVersion, dispatcher);
+            if (previous != null) {
+                dispatcher = previous;
+            }
+        }
+        this.myDispatcher = dispatcher;
     }
 
     @Override
     public boolean canBuild(String modelName) {
-        for (ModelBuilderService service : buildersLoader) {
-            if (service.canBuild(modelName) && isVersionMatch(service)) {
-                return true;
-            }
-        }
-        return false;
+        return myDispatcher.getBuilder(modelName) != null;
     }
 
     @Override
     public Object buildAll(String modelName, Project project) {
-        for (ModelBuilderService service : buildersLoader) {
-            if (service.canBuild(modelName) && isVersionMatch(service)) {
-                try {
-                    return service.buildAll(modelName, project);
-                }
-                catch (Exception e) {
-                    ErrorMessageBuilder builderError = service.getErrorMessageBuilder(project, e);
-                    project.getLogger().error(builderError.build());
-                }
-                return null;
+        ModelBuilderService service = myDispatcher.getBuilder(modelName);
+        if (service == null) {
+            throw new IllegalArgumentException("Unsupported model: " + modelName);
+        }
+        try {
+            return service.buildAll(modelName, project);
+        }
+        catch (Exception e) {
+            ErrorMessageBuilder builderError = service.getErrorMessageBuilder(project, e);
+            project.getLogger().error(builderError.build());
+        }
+        return null;
+    }
+
+    private static List<ModelBuilderService> loadBuilders() {
+        List<ModelBuilderService> builders = new ArrayList<ModelBuilderService>();
+        for (ModelBuilderService service : ServiceLoader.load(ModelBuilderService.class, ExtraModelBuilder.class.getClassLoader())) {
+            builders.add(service);
+        }
+        return Collections.unmodifiableList(builders);
+    }
+
+    private List<ModelBuilderService> getMatchingBuilders() {
+        List<ModelBuilderService> builders = new ArrayList<ModelBuilderService>();
+        for (ModelBuilderService service : ourBuilders) {
+            if (isVersionMatch(service)) {
+                builders.add(service);
             }
         }
-        throw new IllegalArgumentException("Unsupported model: " + modelName);
+        return builders;
+    }
+
+    /**
+     * @return information about the given project shared by all the model builders
+     */
+    public static ProjectModelCache getProjectCache(Project project) {
+        Project rootProject = project.getRootProject();
+        // the root project cache holds the state shared by all the projects of the build
+        ProjectModelCache rootCache = rootProject == project ? null : getProjectCache(rootProject);
+        synchronized (ourProjectCaches) {
+            ProjectModelCache cache = ourProjectCaches.get(project);
+            if (cache == null) {
+                cache = new ProjectModelCache(project, rootCache);
+                ourProjectCaches.put(project, cache);
+            }
+            return cache;
+        }
     }
 
     private boolean isVersionMatch(ModelBuilderService builderService) {
@@ -104,4 +153,34 @@ public class ExtraModelBuilder implements ToolingModelBuilder {
     private static GradleVersion adjust(GradleVersion version, boolean checkBaseVersions) {
         return checkBaseVersions ? version.getBaseVersion() : version;
     }
+
+    /**
+     * Builders which match the gradle version and the memoized model name to builder mapping. Builders can't enumerate the models
+     * they support (see {@link ModelBuilderService#canBuild(String)}), so the mapping is filled on the first request of every model.
+     */
+    private static class Dispatcher {
+        private static final Object NO_BUILDER = new Object();
+
+        private final List<ModelBuilderService> myBuilders;
+        private final ConcurrentHashMap<String, Object> myBuildersByModelName = new ConcurrentHashMap<String, Object>();
+
+        private Dispatcher(List<ModelBuilderService> builders) {
+            myBuilders = builders;
+        }
+
+        private ModelBuilderService getBuilder(String modelName) {
+            Object builder = myBuildersByModelName.get(modelName);
+            if (builder == null) {
+                builder = NO_BUILDER;
+                for (ModelBuilderService service : myBuilders) {
+                    if (service.canBuild(modelName)) {
+                        builder = service;
+                        break;
+                    }
+                }
+                myBuildersByModelName.put(modelName, builder);
+            }
+            return builder == NO_BUILDER ? null : (ModelBuilderService) builder;
+        }
+    }
 }
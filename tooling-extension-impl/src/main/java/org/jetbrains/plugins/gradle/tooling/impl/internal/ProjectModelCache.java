@@ -0,0 +1,243 @@
+package org.jetbrains.plugins.gradle.tooling.impl.internal;
+
+import consulo.gradle.tooling.impl.buildler.util.ReflectionMethod;
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.SourceSetOutput;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.testing.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project information required by several model builders (source sets, their outputs, archives, test tasks), which is
+ * computed once per project and build, see {@link ExtraModelBuilder#getProjectCache(Project)}.
+ * <p>
+ * The cache is weakly keyed by its project, so it must not hold the project or its domain objects (source sets, tasks)
+ * strongly, only the values computed from them.
+ */
+public class ProjectModelCache {
+    private static final ReflectionMethod<File, Test> Test__getTestClassesDir =
+        new ReflectionMethod<>(Test.class, "getTestClassesDir");
+    private static final ReflectionMethod<Iterable<File>, Test> Test__getTestClassesDirs =
+        new ReflectionMethod<>(Test.class, "getTestClassesDirs");
+
+    private static final ReflectionMethod<File, SourceSetOutput> SourceSetOutput__getClassesDir =
+        new ReflectionMethod<>(SourceSetOutput.class, "getClassesDir");
+    private static final ReflectionMethod<Iterable<File>, SourceSetOutput> SourceSetOutput__getClassesDirs =
+        new ReflectionMethod<>(SourceSetOutput.class, "getClassesDirs");
+
+    private static final ReflectionMethod<SourceSetContainer, JavaPluginExtension> JavaPluginExtension__getSourceSets =
+        new ReflectionMethod<>(JavaPluginExtension.class, "getSourceSets");
+
+    private static final ReflectionMethod<File, AbstractArchiveTask> AbstractArchiveTask_getArchivePath =
+        new ReflectionMethod<>(AbstractArchiveTask.class, "getArchivePath");
+    private static final ReflectionMethod<Provider<RegularFile>, AbstractArchiveTask> AbstractArchiveTask_getArchiveFile =
+        new ReflectionMethod<>(AbstractArchiveTask.class, "getArchiveFile");
+
+    private static final String SOURCE_SETS_PROPERTY = "sourceSets";
+
+    private final WeakReference<Project> myProject;
+
+    private final Map<String, List<File>> myClassesDirs = new HashMap<>();
+    private List<File> myArchives;
+    private List<File> myTestClassesDirs;
+    private List<File> myTestClassesDirsFiles;
+    private Set<String> myTestClassesDirsWithParents;
+    private final Map<String, Object> myModels = new HashMap<>();
+    // shared by all the projects of the build
+    private final Map<String, String> myCanonicalPaths;
+
+    ProjectModelCache(Project project, ProjectModelCache rootCache) {
+        myProject = new WeakReference<Project>(project);
+        myCanonicalPaths = rootCache == null ? new ConcurrentHashMap<String, String>() : rootCache.myCanonicalPaths;
+    }
+
+    /**
+     * @return source sets of the project from the java plugin extension or the <code>sourceSets</code> property,
+     * <code>null</code> for the projects without java plugin
+     */
+    public SourceSetContainer getSourceSets() {
+        // not cached: the container references the project
+        Project project = getProject();
+        SourceSetContainer sourceSets = findSourceSetContainer(project);
+        if (sourceSets == null && project.hasProperty(SOURCE_SETS_PROPERTY)) {
+            Object property = project.property(SOURCE_SETS_PROPERTY);
+            if (property instanceof SourceSetContainer) {
+                sourceSets = (SourceSetContainer) property;
+            }
+        }
+        return sourceSets;
+    }
+
+    public synchronized List<File> getClassesDirs(SourceSet sourceSet) {
+        List<File> result = myClassesDirs.get(sourceSet.getName());
+        if (result == null) {
+            result = new ArrayList<>();
+            SourceSetOutput output = sourceSet.getOutput();
+            File file = SourceSetOutput__getClassesDir.invoke(output);
+            if (file != null) {
+                result.add(file);
+            }
+            else {
+                Iterable<File> files = SourceSetOutput__getClassesDirs.invoke(output);
+                if (files != null) {
+                    for (File dir : files) {
+                        result.add(dir);
+                    }
+                }
+            }
+            result = Collections.unmodifiableList(result);
+            myClassesDirs.put(sourceSet.getName(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return archives produced by the jar tasks of the project
+     */
+    public synchronized List<File> getArchives() {
+        if (myArchives == null) {
+            List<File> archives = new ArrayList<>();
+            for (Jar jar : getProject().getTasks().withType(Jar.class)) {
+                File jarFile = AbstractArchiveTask_getArchivePath.invoke(jar);
+                if (jarFile != null) {
+                    archives.add(jarFile);
+                }
+
+                Provider<RegularFile> provider = AbstractArchiveTask_getArchiveFile.invoke(jar);
+                if (provider != null) {
+                    RegularFile file = provider.getOrNull();
+                    if (file != null) {
+                        archives.add(file.getAsFile());
+                    }
+                }
+            }
+            myArchives = Collections.unmodifiableList(archives);
+        }
+        return myArchives;
+    }
+
+    /**
+     * @return test classes dirs of the test tasks provided by the single directory API (before gradle 4.0)
+     */
+    public synchronized List<File> getTestClassesDirs() {
+        computeTestClassesDirs();
+        return myTestClassesDirs;
+    }
+
+    /**
+     * @return test classes dirs of the test tasks provided by the multiple directories API (gradle 4.0+)
+     */
+    public synchronized List<File> getTestClassesDirsFiles() {
+        computeTestClassesDirs();
+        return myTestClassesDirsFiles;
+    }
+
+    /**
+     * @return paths of the {@link #getTestClassesDirs() test classes dirs} and all their parents
+     */
+    public synchronized Set<String> getTestClassesDirsWithParents() {
+        if (myTestClassesDirsWithParents == null) {
+            Set<String> result = new HashSet<>();
+            for (File dir : getTestClassesDirs()) {
+                File file = dir;
+                // stop at the path which was added together with its parents already
+                while (file != null && result.add(file.getPath())) {
+                    file = file.getParentFile();
+                }
+            }
+            myTestClassesDirsWithParents = Collections.unmodifiableSet(result);
+        }
+        return myTestClassesDirsWithParents;
+    }
+
+    /**
+     * Resolves canonical path of the file once per build, equal canonical paths are represented by the same string.
+     *
+     * @return canonical path of the file, <code>null</code> if it can't be resolved
+     */
+    public String getCanonicalPath(File file) {
+        String path = file.getPath();
+        String canonicalPath = myCanonicalPaths.get(path);
+        if (canonicalPath == null) {
+            try {
+                canonicalPath = file.getCanonicalPath();
+            }
+            catch (IOException e) {
+                return null;
+            }
+            String previous = myCanonicalPaths.putIfAbsent(canonicalPath, canonicalPath);
+            if (previous != null) {
+                canonicalPath = previous;
+            }
+            myCanonicalPaths.put(path, canonicalPath);
+        }
+        return canonicalPath;
+    }
+
+    private void computeTestClassesDirs() {
+        if (myTestClassesDirs != null) {
+            return;
+        }
+
+        List<File> testClassesDirs = new ArrayList<>();
+        List<File> testClassesDirsFiles = new ArrayList<>();
+        for (Test test : getProject().getTasks().withType(Test.class)) {
+            File testDir = Test__getTestClassesDir.invoke(test);
+            if (testDir != null) {
+                testClassesDirs.add(testDir);
+            }
+
+            Iterable<File> files = Test__getTestClassesDirs.invoke(test);
+            if (files != null) {
+                for (File file : files) {
+                    testClassesDirsFiles.add(file);
+                }
+            }
+        }
+        myTestClassesDirs = Collections.unmodifiableList(testClassesDirs);
+        myTestClassesDirsFiles = Collections.unmodifiableList(testClassesDirsFiles);
+    }
+
+    /**
+     * @return model previously built for the project by the given builder, see {@link #putModel(String, Object)}
+     */
+    public synchronized Object getModel(String key) {
+        return myModels.get(key);
+    }
+
+    public synchronized void putModel(String key, Object model) {
+        myModels.put(key, model);
+    }
+
+    private Project getProject() {
+        Project project = myProject.get();
+        if (project == null) {
+            throw new IllegalStateException("Project of the model cache is already disposed");
+        }
+        return project;
+    }
+
+    public static SourceSetContainer findSourceSetContainer(Project project) {
+        try {
+            JavaPluginExtension pluginExtension = project.getExtensions().getByType(JavaPluginExtension.class);
+            if (pluginExtension != null) {
+                return JavaPluginExtension__getSourceSets.invoke(pluginExtension);
+            }
+        }
+        catch (Throwable ignored) {
+        }
+
+        return null;
+    }
+}
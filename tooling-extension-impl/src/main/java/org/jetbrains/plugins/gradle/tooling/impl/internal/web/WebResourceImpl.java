@@ -18,6 +18,8 @@ package org.jetbrains.plugins.gradle.tooling.impl.internal.web;
 import org.jetbrains.plugins.gradle.tooling.web.WebConfiguration;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Set;
 
 /**
  * @author Vladislav.Soroka
@@ -31,10 +33,20 @@ public class WebResourceImpl implements WebConfiguration.WebResource {
   
   private final File file;
 
+  private final Set<String> myIncludes;
+
+  private final Set<String> myExcludes;
+
   public WebResourceImpl( String warDirectory,  String relativePath,  File file) {
+    this(warDirectory, relativePath, file, Collections.<String>emptySet(), Collections.<String>emptySet());
+  }
+
+  public WebResourceImpl(String warDirectory, String relativePath, File file, Set<String> includes, Set<String> excludes) {
     myWarDirectory = warDirectory;
     this.myRelativePath = relativePath;
     this.file = file;
+    myIncludes = includes;
+    myExcludes = excludes;
   }
 
   
@@ -55,6 +67,16 @@ public class WebResourceImpl implements WebConfiguration.WebResource {
     return file;
   }
 
+  @Override
+  public Set<String> getIncludes() {
+    return myIncludes;
+  }
+
+  @Override
+  public Set<String> getExcludes() {
+    return myExcludes;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -64,6 +86,8 @@ public class WebResourceImpl implements WebConfiguration.WebResource {
     if (!file.getPath().equals(resource.file.getPath())) return false;
     if (myWarDirectory != resource.myWarDirectory) return false;
     if (!myRelativePath.equals(resource.myRelativePath)) return false;
+    if (!myIncludes.equals(resource.myIncludes)) return false;
+    if (!myExcludes.equals(resource.myExcludes)) return false;
 
     return true;
   }
@@ -73,6 +97,8 @@ public class WebResourceImpl implements WebConfiguration.WebResource {
     int result = myWarDirectory.hashCode();
     result = 31 * result + myRelativePath.hashCode();
     result = 31 * result + file.getPath().hashCode();
+    result = 31 * result + myIncludes.hashCode();
+    result = 31 * result + myExcludes.hashCode();
     return result;
   }
 
@@ -82,6 +108,8 @@ public class WebResourceImpl implements WebConfiguration.WebResource {
            "myWarDirectory=" + myWarDirectory +
            ", warRelativePath='" + myRelativePath + '\'' +
            ", file=" + file +
+           ", includes=" + myIncludes +
+           ", excludes=" + myExcludes +
            '}';
   }
 }